@@ -0,0 +1,228 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+import org.apache.http.util.Args;
+
+/**
+ * 按目标主机自适应调整的并发限制（AIMD）：
+ * 请求成功且耗时正常时并发上限加1，请求失败（连接错误、超时、5xx）或耗时超过基准耗时的容忍倍数时上限乘以0.9。
+ * 超过并发上限的请求直接拒绝，不再排队等待连接。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	private static final double BACKOFF_RATIO = 0.9;
+
+	private static final long BASELINE_RESET_MILLIS = 60 * 1000;
+
+	private final int initialLimit;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double latencyTolerance;
+
+	private final ConcurrentMap<HttpHost, RouteLimit> routes = new ConcurrentHashMap<HttpHost, RouteLimit>();
+
+	/**
+	 * @param initialLimit 初始并发上限
+	 * @param maxLimit 最大并发上限，一般不超过连接池中该主机的连接数
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit) {
+		this(initialLimit, 1, maxLimit, 2.0);
+	}
+
+	/**
+	 * @param initialLimit 初始并发上限
+	 * @param minLimit 最小并发上限
+	 * @param maxLimit 最大并发上限，一般不超过连接池中该主机的连接数
+	 * @param latencyTolerance 耗时超过基准耗时（最近一段时间内的最小耗时）的倍数时视为过载
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double latencyTolerance) {
+		this.minLimit = Args.positive(minLimit, "minLimit");
+		this.maxLimit = Args.positive(maxLimit, "maxLimit");
+		Args.check(minLimit <= maxLimit, "minLimit must not be greater than maxLimit");
+		Args.check(latencyTolerance >= 1, "latencyTolerance must be at least 1");
+		this.initialLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.latencyTolerance = latencyTolerance;
+	}
+
+	/**
+	 * @param host
+	 * @return 是否获得执行许可，获得许可后必须调用{@link #release(HttpHost)}
+	 */
+	boolean tryAcquire(HttpHost host) {
+
+		RouteLimit route = getRoute(host);
+
+		while (true) {
+			int inFlight = route.inFlight.get();
+
+			if (inFlight >= route.getLimit())
+				return false;
+
+			if (route.inFlight.compareAndSet(inFlight, inFlight + 1))
+				return true;
+		}
+	}
+
+	void release(HttpHost host) {
+		getRoute(host).inFlight.decrementAndGet();
+	}
+
+	/**
+	 * 请求成功，在{@link #release(HttpHost)}之前调用
+	 */
+	void onSuccess(HttpHost host, long latency) {
+
+		RouteLimit route = getRoute(host);
+		long baseline = route.updateBaseline(latency);
+
+		if (latency > baseline * latencyTolerance) {
+			route.backoff();
+		} else if (route.inFlight.get() * 2 >= route.getLimit()) {
+			// 只有并发上限被实际用到一半以上时才增加
+			route.increase();
+		}
+	}
+
+	/**
+	 * 请求因连接错误、超时或服务端错误失败，在{@link #release(HttpHost)}之前调用
+	 */
+	void onDropped(HttpHost host) {
+		getRoute(host).backoff();
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机当前的并发上限
+	 */
+	public int getLimit(HttpHost host) {
+		return getRoute(host).getLimit();
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机当前正在执行的请求数
+	 */
+	public int getInFlight(HttpHost host) {
+		return getRoute(host).inFlight.get();
+	}
+
+	/**
+	 * @return 所有目标主机当前的并发上限
+	 */
+	public Map<HttpHost, Integer> getLimits() {
+
+		Map<HttpHost, Integer> limits = new HashMap<HttpHost, Integer>();
+
+		for (Map.Entry<HttpHost, RouteLimit> entry : routes.entrySet()) {
+			limits.put(entry.getKey(), entry.getValue().getLimit());
+		}
+
+		return limits;
+	}
+
+	private RouteLimit getRoute(HttpHost host) {
+
+		RouteLimit route = routes.get(host);
+
+		if (route == null) {
+			route = new RouteLimit(initialLimit);
+			RouteLimit existing = routes.putIfAbsent(host, route);
+			if (existing != null)
+				route = existing;
+		}
+
+		return route;
+	}
+
+	private class RouteLimit {
+
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		/**
+		 * double类型的并发上限，以bit形式保存以便CAS更新
+		 */
+		final AtomicLong limitBits;
+
+		volatile long baseline = Long.MAX_VALUE;
+
+		volatile long baselineSince = System.currentTimeMillis();
+
+		RouteLimit(int initialLimit) {
+			this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+		}
+
+		int getLimit() {
+			return (int) Double.longBitsToDouble(limitBits.get());
+		}
+
+		void increase() {
+			update(1, 1);
+		}
+
+		void backoff() {
+			update(BACKOFF_RATIO, 0);
+		}
+
+		private void update(double ratio, double delta) {
+			while (true) {
+				long bits = limitBits.get();
+				double limit = Double.longBitsToDouble(bits) * ratio + delta;
+				limit = Math.max(minLimit, Math.min(maxLimit, limit));
+
+				if (limitBits.compareAndSet(bits, Double.doubleToLongBits(limit)))
+					return;
+			}
+		}
+
+		/**
+		 * 基准耗时取最近一段时间内的最小耗时，定期重置以适应上游的变化
+		 */
+		long updateBaseline(long latency) {
+
+			long now = System.currentTimeMillis();
+			long current = baseline;
+
+			if (now - baselineSince > BASELINE_RESET_MILLIS) {
+				baselineSince = now;
+				current = Long.MAX_VALUE;
+			}
+
+			if (latency < current) {
+				current = Math.max(1, latency);
+			}
+
+			baseline = current;
+
+			return current;
+		}
+	}
+
+}
@@ -0,0 +1,385 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.util.InetAddressUtils;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.util.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 带缓存的DNS解析：解析结果缓存ttl毫秒，超过refreshAhead比例的ttl后在后台刷新，过期后在staleTtl内仍返回旧结果并在后台刷新，
+ * 刷新失败时继续使用旧结果，refreshRetryInterval内不再重新刷新。只有第一次解析或旧结果也过期时才在请求线程中同步解析，
+ * 同一主机同时只解析一次，其他线程等待该次解析的结果。
+ * JVM的解析接口不提供DNS记录的TTL，因此TTL在这里配置。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+	private static final Logger log = LoggerFactory.getLogger(CachingDnsResolver.class);
+
+	private final DnsResolver delegate;
+
+	private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+	private final ConcurrentMap<String, FutureTask<InetAddress[]>> inFlight = new ConcurrentHashMap<String, FutureTask<InetAddress[]>>();
+
+	private final ConcurrentMap<String, InetAddress[]> overrides = new ConcurrentHashMap<String, InetAddress[]>();
+
+	private long ttl = 60000;
+
+	private double refreshAhead = 0.8;
+
+	private long staleTtl = 5 * 60000;
+
+	private long refreshRetryInterval = 10000;
+
+	private volatile ExecutorService refreshExecutor;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong staleHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong refreshes = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	public CachingDnsResolver() {
+		this(SystemDefaultDnsResolver.INSTANCE);
+	}
+
+	/**
+	 * @param delegate 实际执行解析的DnsResolver
+	 */
+	public CachingDnsResolver(DnsResolver delegate) {
+		this.delegate = Args.notNull(delegate, "delegate");
+	}
+
+	/**
+	 * @param ttl 解析结果的有效时间，单位：毫秒，默认60000
+	 */
+	public CachingDnsResolver setTtl(long ttl) {
+		this.ttl = Args.positive(ttl, "ttl");
+		return this;
+	}
+
+	/**
+	 * @param refreshAhead 解析结果使用超过ttl的该比例后在后台刷新，取值(0, 1]，默认0.8
+	 */
+	public CachingDnsResolver setRefreshAhead(double refreshAhead) {
+		Args.check(refreshAhead > 0 && refreshAhead <= 1, "refreshAhead must be in (0, 1]");
+		this.refreshAhead = refreshAhead;
+		return this;
+	}
+
+	/**
+	 * @param staleTtl 过期后仍可使用旧结果的时间，单位：毫秒，默认300000，0表示过期后同步解析
+	 */
+	public CachingDnsResolver setStaleTtl(long staleTtl) {
+		this.staleTtl = Args.notNegative(staleTtl, "staleTtl");
+		return this;
+	}
+
+	/**
+	 * @param refreshRetryInterval 后台刷新失败后，再次刷新前的等待时间，单位：毫秒，默认10000
+	 */
+	public CachingDnsResolver setRefreshRetryInterval(long refreshRetryInterval) {
+		this.refreshRetryInterval = Args.notNegative(refreshRetryInterval, "refreshRetryInterval");
+		return this;
+	}
+
+	/**
+	 * 固定的解析结果，优先于缓存和实际解析，一般用于测试
+	 *
+	 * @param host
+	 * @param addresses IP地址，不能是主机名
+	 * @return
+	 * @throws UnknownHostException 不是IPv4或IPv6地址
+	 */
+	public CachingDnsResolver addOverride(String host, String... addresses) throws UnknownHostException {
+
+		Args.notEmpty(host, "host");
+		Args.check(addresses != null && addresses.length > 0, "addresses must not be empty");
+
+		InetAddress[] resolved = new InetAddress[addresses.length];
+
+		for (int i = 0; i < addresses.length; i++) {
+			String address = addresses[i];
+
+			// 只接受IP地址，InetAddress.getByName对IP地址不做DNS查询
+			if (address == null || !(InetAddressUtils.isIPv4Address(address) || InetAddressUtils.isIPv6Address(address)))
+				throw new UnknownHostException("Not an IP address: " + address);
+
+			resolved[i] = InetAddress.getByAddress(host, InetAddress.getByName(address).getAddress());
+		}
+
+		overrides.put(host.toLowerCase(), resolved);
+		return this;
+	}
+
+	public CachingDnsResolver removeOverride(String host) {
+		overrides.remove(host.toLowerCase());
+		return this;
+	}
+
+	@Override
+	public InetAddress[] resolve(String host) throws UnknownHostException {
+
+		String key = host.toLowerCase();
+
+		InetAddress[] override = overrides.get(key);
+
+		if (override != null)
+			return override.clone();
+
+		Entry entry = cache.get(key);
+		long now = System.currentTimeMillis();
+
+		if (entry != null) {
+			long age = now - entry.resolvedAt;
+
+			if (age < ttl) {
+				hits.incrementAndGet();
+
+				if (age >= ttl * refreshAhead)
+					refreshAsync(key, entry, now);
+
+				return entry.addresses.clone();
+			}
+
+			if (age < ttl + staleTtl) {
+				staleHits.incrementAndGet();
+				refreshAsync(key, entry, now);
+
+				return entry.addresses.clone();
+			}
+		}
+
+		return lookup(host, key);
+	}
+
+	/**
+	 * 同步解析，同一主机同时只有一个线程调用delegate，其他线程等待其结果
+	 */
+	private InetAddress[] lookup(final String host, final String key) throws UnknownHostException {
+
+		FutureTask<InetAddress[]> task = new FutureTask<InetAddress[]>(new Callable<InetAddress[]>() {
+
+			@Override
+			public InetAddress[] call() throws Exception {
+
+				misses.incrementAndGet();
+
+				try {
+					InetAddress[] addresses = delegate.resolve(host);
+					cache.put(key, new Entry(addresses, System.currentTimeMillis()));
+
+					return addresses;
+				} catch (UnknownHostException e) {
+					failures.incrementAndGet();
+					throw e;
+				}
+			}
+		});
+
+		FutureTask<InetAddress[]> running = inFlight.putIfAbsent(key, task);
+
+		if (running == null) {
+			running = task;
+
+			try {
+				task.run();
+			} finally {
+				inFlight.remove(key, task);
+			}
+		}
+
+		try {
+			return running.get().clone();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new UnknownHostException("Interrupted while resolving " + host);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof UnknownHostException)
+				throw (UnknownHostException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+
+			UnknownHostException ex = new UnknownHostException(host);
+			ex.initCause(cause);
+			throw ex;
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		cache.clear();
+	}
+
+	/**
+	 * @return 缓存命中次数（不含过期的旧结果）
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return 返回过期的旧结果的次数
+	 */
+	public long getStaleHitCount() {
+		return staleHits.get();
+	}
+
+	/**
+	 * @return 同步解析次数
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return 后台刷新次数
+	 */
+	public long getRefreshCount() {
+		return refreshes.get();
+	}
+
+	/**
+	 * @return 解析失败次数（包括后台刷新失败）
+	 */
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * @return 缓存的主机数
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * @return 当前缓存的解析结果
+	 */
+	public Map<String, InetAddress[]> getCachedAddresses() {
+
+		Map<String, InetAddress[]> result = new HashMap<String, InetAddress[]>();
+
+		for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().addresses.clone());
+		}
+
+		return result;
+	}
+
+	private void refreshAsync(final String host, final Entry entry, long now) {
+
+		// 上次刷新失败后等待一段时间再刷新
+		if (now - entry.refreshFailedAt < refreshRetryInterval)
+			return;
+
+		// 每个过期的结果只刷新一次
+		if (!entry.refreshing.compareAndSet(false, true))
+			return;
+
+		try {
+			getRefreshExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						InetAddress[] addresses = delegate.resolve(host);
+						cache.replace(host, entry, new Entry(addresses, System.currentTimeMillis()));
+						refreshes.incrementAndGet();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						entry.refreshFailedAt = System.currentTimeMillis();
+						entry.refreshing.set(false);
+						log.debug("Refresh DNS of " + host + " failed, keep using cached addresses: " + e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			entry.refreshing.set(false);
+		}
+	}
+
+	private ExecutorService getRefreshExecutor() {
+
+		ExecutorService result = refreshExecutor;
+
+		if (result == null) {
+			synchronized (this) {
+				result = refreshExecutor;
+				if (result == null) {
+					// 解析会阻塞，不能放在共用的定时线程中；空闲线程60秒后回收
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+							new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("dns-refresh"));
+					executor.allowCoreThreadTimeOut(true);
+					refreshExecutor = result = executor;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static class Entry {
+
+		final InetAddress[] addresses;
+
+		final long resolvedAt;
+
+		final AtomicBoolean refreshing = new AtomicBoolean();
+
+		volatile long refreshFailedAt;
+
+		Entry(InetAddress[] addresses, long resolvedAt) {
+			this.addresses = addresses;
+			this.resolvedAt = resolvedAt;
+		}
+	}
+
+}
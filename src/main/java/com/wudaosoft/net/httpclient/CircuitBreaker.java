@@ -0,0 +1,353 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.http.HttpHost;
+import org.apache.http.util.Args;
+
+/**
+ * 按目标主机熔断：统计滑动时间窗口内的失败率和慢调用率，超过阈值时熔断，熔断期间请求直接拒绝，不占用连接。
+ * 熔断时间过后进入半开状态，放行少量探测请求，探测全部成功则恢复，否则继续熔断。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private int failureRateThreshold = 50;
+
+	private int slowCallRateThreshold = 100;
+
+	private long slowCallDuration = 5000;
+
+	private int windowSeconds = 10;
+
+	private int minimumCalls = 20;
+
+	private long openDuration = 30000;
+
+	private int probeCalls = 3;
+
+	private final ConcurrentMap<HttpHost, HostCircuit> circuits = new ConcurrentHashMap<HttpHost, HostCircuit>();
+
+	/**
+	 * @param failureRateThreshold 失败率阈值（百分比），默认50
+	 */
+	public CircuitBreaker setFailureRateThreshold(int failureRateThreshold) {
+		Args.check(failureRateThreshold > 0 && failureRateThreshold <= 100, "failureRateThreshold must be in (0, 100]");
+		this.failureRateThreshold = failureRateThreshold;
+		return this;
+	}
+
+	/**
+	 * @param slowCallRateThreshold 慢调用率阈值（百分比），默认100
+	 */
+	public CircuitBreaker setSlowCallRateThreshold(int slowCallRateThreshold) {
+		Args.check(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100, "slowCallRateThreshold must be in (0, 100]");
+		this.slowCallRateThreshold = slowCallRateThreshold;
+		return this;
+	}
+
+	/**
+	 * @param slowCallDuration 耗时超过该值的请求视为慢调用，单位：毫秒，默认5000
+	 */
+	public CircuitBreaker setSlowCallDuration(long slowCallDuration) {
+		this.slowCallDuration = Args.positive(slowCallDuration, "slowCallDuration");
+		return this;
+	}
+
+	/**
+	 * @param windowSeconds 滑动窗口长度，单位：秒，默认10
+	 */
+	public CircuitBreaker setWindowSeconds(int windowSeconds) {
+		this.windowSeconds = Args.positive(windowSeconds, "windowSeconds");
+		return this;
+	}
+
+	/**
+	 * @param minimumCalls 窗口内请求数达到该值才计算失败率，默认20
+	 */
+	public CircuitBreaker setMinimumCalls(int minimumCalls) {
+		this.minimumCalls = Args.positive(minimumCalls, "minimumCalls");
+		return this;
+	}
+
+	/**
+	 * @param openDuration 熔断时间，单位：毫秒，默认30000
+	 */
+	public CircuitBreaker setOpenDuration(long openDuration) {
+		this.openDuration = Args.positive(openDuration, "openDuration");
+		return this;
+	}
+
+	/**
+	 * @param probeCalls 半开状态下放行的探测请求数，默认3
+	 */
+	public CircuitBreaker setProbeCalls(int probeCalls) {
+		this.probeCalls = Args.positive(probeCalls, "probeCalls");
+		return this;
+	}
+
+	/**
+	 * @param host
+	 * @return 放行凭证，拒绝时返回null。放行后必须以该凭证调用onSuccess、onFailure或onIgnored其中之一
+	 */
+	Phase tryAcquire(HttpHost host) {
+		return getCircuit(host).tryAcquire();
+	}
+
+	void onSuccess(HttpHost host, Phase permit, long latency) {
+		getCircuit(host).onResult(permit, false, latency >= slowCallDuration);
+	}
+
+	void onFailure(HttpHost host, Phase permit) {
+		getCircuit(host).onResult(permit, true, false);
+	}
+
+	/**
+	 * 请求结果不计入统计（如请求被中止），归还半开状态的探测名额
+	 */
+	void onIgnored(HttpHost host, Phase permit) {
+		getCircuit(host).onIgnored(permit);
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机当前的熔断状态
+	 */
+	public State getState(HttpHost host) {
+		return getCircuit(host).phase.get().state;
+	}
+
+	/**
+	 * 不占用半开状态的探测名额，用于负载均衡时跳过熔断中的实例
+	 *
+	 * @param host
+	 * @return 目标主机现在是否会放行请求
+	 */
+	boolean isAllowing(HttpHost host) {
+
+		Phase current = getCircuit(host).phase.get();
+
+		if (current.state == State.CLOSED)
+			return true;
+
+		if (current.state == State.HALF_OPEN)
+			return current.probePermits.get() > 0;
+
+		// 熔断时间已过，下一个请求会转为半开状态
+		return System.currentTimeMillis() - current.since >= openDuration;
+	}
+
+	/**
+	 * @return 所有目标主机当前的熔断状态
+	 */
+	public Map<HttpHost, State> getStates() {
+
+		Map<HttpHost, State> states = new HashMap<HttpHost, State>();
+
+		for (Map.Entry<HttpHost, HostCircuit> entry : circuits.entrySet()) {
+			states.put(entry.getKey(), entry.getValue().phase.get().state);
+		}
+
+		return states;
+	}
+
+	private HostCircuit getCircuit(HttpHost host) {
+
+		HostCircuit circuit = circuits.get(host);
+
+		if (circuit == null) {
+			circuit = new HostCircuit(windowSeconds);
+			HostCircuit existing = circuits.putIfAbsent(host, circuit);
+			if (existing != null)
+				circuit = existing;
+		}
+
+		return circuit;
+	}
+
+	/**
+	 * 熔断器的一个状态阶段，每次状态变化都创建新的阶段。
+	 * 放行的请求以所处阶段为凭证，请求完成时阶段已经结束的（如熔断前放行、半开时才完成的请求）不计入统计
+	 */
+	static final class Phase {
+
+		final State state;
+
+		final long since = System.currentTimeMillis();
+
+		final int probes;
+
+		final AtomicInteger probePermits;
+
+		final AtomicInteger probeSuccesses = new AtomicInteger();
+
+		Phase(State state, int probes) {
+			this.state = state;
+			this.probes = probes;
+			this.probePermits = new AtomicInteger(probes);
+		}
+
+		boolean acquireProbe() {
+			while (true) {
+				int permits = probePermits.get();
+
+				if (permits <= 0)
+					return false;
+
+				if (probePermits.compareAndSet(permits, permits - 1))
+					return true;
+			}
+		}
+	}
+
+	private class HostCircuit {
+
+		final AtomicReference<Phase> phase = new AtomicReference<Phase>(new Phase(State.CLOSED, 0));
+
+		final Bucket[] buckets;
+
+		HostCircuit(int windowSeconds) {
+			buckets = new Bucket[windowSeconds];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new Bucket();
+			}
+		}
+
+		Phase tryAcquire() {
+
+			while (true) {
+				Phase current = phase.get();
+
+				if (current.state == State.CLOSED)
+					return current;
+
+				if (current.state == State.HALF_OPEN)
+					return current.acquireProbe() ? current : null;
+
+				if (System.currentTimeMillis() - current.since < openDuration)
+					return null;
+
+				phase.compareAndSet(current, new Phase(State.HALF_OPEN, probeCalls));
+			}
+		}
+
+		void onResult(Phase permit, boolean failure, boolean slow) {
+
+			Phase current = phase.get();
+
+			if (permit != current)
+				return;
+
+			if (current.state == State.HALF_OPEN) {
+				if (failure || slow) {
+					transition(current, State.OPEN);
+				} else if (current.probeSuccesses.incrementAndGet() == current.probes) {
+					// 半开状态不记录统计，先清空窗口再恢复，恢复后放行的请求不会被清掉
+					reset();
+					transition(current, State.CLOSED);
+				}
+				return;
+			}
+
+			long second = System.currentTimeMillis() / 1000;
+
+			currentBucket(second).record(failure, slow);
+
+			long total = 0, failures = 0, slows = 0;
+
+			for (Bucket bucket : buckets) {
+				if (second - bucket.second.get() < buckets.length) {
+					total += bucket.total.get();
+					failures += bucket.failures.get();
+					slows += bucket.slows.get();
+				}
+			}
+
+			if (total >= minimumCalls
+					&& (failures * 100 >= failureRateThreshold * total || slows * 100 >= slowCallRateThreshold * total)) {
+				transition(current, State.OPEN);
+			}
+		}
+
+		void onIgnored(Phase permit) {
+			if (permit.state == State.HALF_OPEN && permit == phase.get())
+				permit.probePermits.incrementAndGet();
+		}
+
+		private void transition(Phase expect, State state) {
+			phase.compareAndSet(expect, new Phase(state, 0));
+		}
+
+		private void reset() {
+			for (Bucket bucket : buckets) {
+				bucket.second.set(0);
+				bucket.clear();
+			}
+		}
+
+		private Bucket currentBucket(long second) {
+
+			Bucket bucket = buckets[(int) (second % buckets.length)];
+			long bucketSecond = bucket.second.get();
+
+			if (bucketSecond != second && bucket.second.compareAndSet(bucketSecond, second)) {
+				bucket.clear();
+			}
+
+			return bucket;
+		}
+	}
+
+	private static class Bucket {
+
+		final AtomicLong second = new AtomicLong();
+
+		final AtomicInteger total = new AtomicInteger();
+
+		final AtomicInteger failures = new AtomicInteger();
+
+		final AtomicInteger slows = new AtomicInteger();
+
+		void record(boolean failure, boolean slow) {
+			total.incrementAndGet();
+			if (failure)
+				failures.incrementAndGet();
+			if (slow)
+				slows.incrementAndGet();
+		}
+
+		void clear() {
+			total.set(0);
+			failures.set(0);
+			slows.set(0);
+		}
+	}
+
+}
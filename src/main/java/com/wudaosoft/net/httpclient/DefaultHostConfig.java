@@ -18,6 +18,9 @@ package com.wudaosoft.net.httpclient;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.http.HttpHost;
 import org.apache.http.client.config.AuthSchemes;
@@ -27,7 +30,7 @@ import org.apache.http.client.config.RequestConfig;
  * @author Changsoul Wu
  * 
  */
-public abstract class DefaultHostConfig implements HostConfig {
+public abstract class DefaultHostConfig implements ExtendedHostConfig {
 
 	private String userAgent = "Wudaosoft Http Tools/1.0";
 	private RequestConfig defaultRequestConfig;
@@ -120,5 +123,77 @@ public abstract class DefaultHostConfig implements HostConfig {
 	public int getHostCount() {
 		return 0;
 	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getRateLimiter()
+	 */
+	@Override
+	public HostRateLimiter getRateLimiter() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getDeadline()
+	 */
+	@Override
+	public long getDeadline() {
+		return 0;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getIdleConnectionTimeout()
+	 */
+	@Override
+	public long getIdleConnectionTimeout() {
+		return 30000;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getEvictionPeriod()
+	 */
+	@Override
+	public long getEvictionPeriod() {
+		return 18000;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getRouteMaxConnections()
+	 */
+	@Override
+	public Map<HttpHost, Integer> getRouteMaxConnections() {
+		return Collections.emptyMap();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getRouteRequestConfigs()
+	 */
+	@Override
+	public Map<HttpHost, RequestConfig> getRouteRequestConfigs() {
+		return Collections.emptyMap();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getHostUrls()
+	 */
+	@Override
+	public List<String> getHostUrls() {
+		return Collections.emptyList();
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getHostSelectionStrategy()
+	 */
+	@Override
+	public HostSelectionStrategy getHostSelectionStrategy() {
+		return null;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.wudaosoft.net.httpclient.ExtendedHostConfig#getUnixSocketPath()
+	 */
+	@Override
+	public String getUnixSocketPath() {
+		return null;
+	}
 	
 }
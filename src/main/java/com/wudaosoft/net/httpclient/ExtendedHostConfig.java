@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+
+/**
+ * HostConfig的扩展配置。只实现HostConfig的配置使用{@link DefaultHostConfig}中的默认值。
+ *
+ * @author changsoul.wu
+ *
+ */
+public interface ExtendedHostConfig extends HostConfig {
+
+	/**
+	 * @return 客户端限流，不限流时返回null
+	 */
+	HostRateLimiter getRateLimiter();
+
+	/**
+	 * @return 请求的默认截止时间，单位：毫秒，0表示不限制
+	 */
+	long getDeadline();
+
+	/**
+	 * @return 空闲超过该时间的连接被关闭，单位：毫秒
+	 */
+	long getIdleConnectionTimeout();
+
+	/**
+	 * @return 清理过期和空闲连接的间隔，单位：毫秒
+	 */
+	long getEvictionPeriod();
+
+	/**
+	 * @return 按目标主机设置的最大连接数
+	 */
+	Map<HttpHost, Integer> getRouteMaxConnections();
+
+	/**
+	 * @return 按目标主机设置的请求配置（超时时间）
+	 */
+	Map<HttpHost, RequestConfig> getRouteRequestConfigs();
+
+	/**
+	 * @return 负载均衡的多个上游实例的基础URL，不做负载均衡时为空
+	 */
+	List<String> getHostUrls();
+
+	/**
+	 * @return 负载均衡策略
+	 */
+	HostSelectionStrategy getHostSelectionStrategy();
+
+	/**
+	 * @return 连接到主机时使用的Unix domain socket路径，为null时使用TCP
+	 */
+	String getUnixSocketPath();
+
+}
@@ -15,13 +15,20 @@
  */
 package com.wudaosoft.net.httpclient;
 
+import java.net.URI;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.http.HttpHost;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.util.Args;
 
 /**
@@ -58,6 +65,28 @@ public class HostConfigBuilder {
 	
 	private RequestConfig requestConfig;
 	
+	private double rateLimit;
+	
+	private Map<String, Double> pathRateLimits = new LinkedHashMap<String, Double>();
+	
+	private long rateLimitTimeout = -1;
+	
+	private long deadline;
+	
+	private long idleConnectionTimeout = 30000;
+	
+	private long evictionPeriod = 18000;
+	
+	private Map<HttpHost, Integer> routeMaxConnections = new HashMap<HttpHost, Integer>();
+	
+	private Map<HttpHost, int[]> routeTimeouts = new HashMap<HttpHost, int[]>();
+	
+	private List<String> hostUrls = new ArrayList<String>();
+	
+	private HostSelectionStrategy hostSelectionStrategy;
+	
+	private String unixSocketPath;
+	
 	HostConfigBuilder () {
 		
 	}
@@ -180,6 +209,140 @@ public class HostConfigBuilder {
 		return this;
 	}
 
+	/**
+	 * 全局限流，每秒最多发出的请求数，最多积攒1秒的突发请求
+	 * 
+	 * @param permitsPerSecond the permitsPerSecond to set
+	 */
+	public HostConfigBuilder setRateLimit(double permitsPerSecond) {
+		Args.check(permitsPerSecond > 0, "permitsPerSecond must be positive");
+		this.rateLimit = permitsPerSecond;
+		return this;
+	}
+
+	/**
+	 * 按URL路径限流，“*”匹配任意字符，如“/pay/*”，按添加顺序取第一个匹配的。同时受全局限流约束。
+	 * 
+	 * @param pathPattern URL路径
+	 * @param permitsPerSecond 每秒最多发出的请求数
+	 */
+	public HostConfigBuilder addRateLimit(String pathPattern, double permitsPerSecond) {
+		Args.notEmpty(pathPattern, "pathPattern");
+		Args.check(permitsPerSecond > 0, "permitsPerSecond must be positive");
+		this.pathRateLimits.put(pathPattern, permitsPerSecond);
+		return this;
+	}
+
+	/**
+	 * 获取限流令牌的最长等待时间，超时抛出RequestRejectedException。单位：毫秒，0表示不等待，默认一直等待
+	 * 
+	 * @param rateLimitTimeout the rateLimitTimeout to set
+	 */
+	public HostConfigBuilder setRateLimitTimeout(long rateLimitTimeout) {
+		this.rateLimitTimeout = rateLimitTimeout;
+		return this;
+	}
+
+	/**
+	 * 请求的默认截止时间，包括等待连接池、建立连接、TLS握手、发送请求和读取全部返回数据。单位：毫秒，默认0不限制
+	 * 
+	 * @param deadline the deadline to set
+	 * @see WorkerBuilder#withDeadline(long)
+	 */
+	public HostConfigBuilder setDeadline(long deadline) {
+		this.deadline = Args.notNegative(deadline, "deadline");
+		return this;
+	}
+
+	/**
+	 * 连接池中空闲超过该时间的连接被关闭。单位：毫秒，默认30000，设为0只关闭keep-alive过期的连接
+	 * 
+	 * @param idleConnectionTimeout the idleConnectionTimeout to set
+	 */
+	public HostConfigBuilder setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = Args.notNegative(idleConnectionTimeout, "idleConnectionTimeout");
+		return this;
+	}
+
+	/**
+	 * 清理过期和空闲连接的间隔。单位：毫秒，默认18000
+	 * 
+	 * @param evictionPeriod the evictionPeriod to set
+	 */
+	public HostConfigBuilder setEvictionPeriod(long evictionPeriod) {
+		this.evictionPeriod = Args.positive(evictionPeriod, "evictionPeriod");
+		return this;
+	}
+
+	/**
+	 * 单独设置某个目标主机的最大连接数，其余主机仍使用默认值。一般用于没有设置hostUrl、访问多个主机的HostConfig，
+	 * 避免繁忙的主机连接不够用，而空闲的主机占着连接。
+	 * 
+	 * @param hostUrl 目标主机，如“https://api.wudaosoft.com”
+	 * @param maxConnections 最大连接数
+	 */
+	public HostConfigBuilder setMaxConnections(String hostUrl, int maxConnections) {
+		Args.notEmpty(hostUrl, "hostUrl");
+		this.routeMaxConnections.put(HttpHost.create(hostUrl), Args.positive(maxConnections, "maxConnections"));
+		return this;
+	}
+
+	/**
+	 * 单独设置某个目标主机的连接超时和读取超时，其余配置与HostConfig相同。单位：毫秒
+	 * 
+	 * @param hostUrl 目标主机，如“https://api.wudaosoft.com”
+	 * @param connectTimeout 连接超时
+	 * @param socketTimeout 读取超时
+	 */
+	public HostConfigBuilder setRouteTimeouts(String hostUrl, int connectTimeout, int socketTimeout) {
+		Args.notEmpty(hostUrl, "hostUrl");
+		Args.notNegative(connectTimeout, "connectTimeout");
+		Args.notNegative(socketTimeout, "socketTimeout");
+		this.routeTimeouts.put(HttpHost.create(hostUrl), new int[] { connectTimeout, socketTimeout });
+		return this;
+	}
+
+	/**
+	 * 多个相同服务的上游实例，相对URL的请求按负载均衡策略选择其中一个，每个实例有各自的连接数。
+	 * 第一个实例同时作为hostUrl。
+	 * 
+	 * @param hostUrls 上游实例的基础URL，如“https://10.0.0.1:8443/api”
+	 * @see #setHostSelectionStrategy(HostSelectionStrategy)
+	 */
+	public HostConfigBuilder setHostUrls(String... hostUrls) {
+		Args.check(hostUrls != null && hostUrls.length > 0, "hostUrls must not be empty");
+		
+		this.hostUrls.clear();
+		
+		for (String url : hostUrls) {
+			Args.notEmpty(url, "hostUrl");
+			this.hostUrls.add(url);
+		}
+		
+		this.hostUrl = hostUrls[0];
+		this.httpHost = URIUtils.extractHost(URI.create(hostUrls[0]));
+		return this;
+	}
+
+	/**
+	 * @param hostSelectionStrategy 负载均衡策略，默认轮询，见{@link HostSelectionStrategies}
+	 */
+	public HostConfigBuilder setHostSelectionStrategy(HostSelectionStrategy hostSelectionStrategy) {
+		this.hostSelectionStrategy = hostSelectionStrategy;
+		return this;
+	}
+
+	/**
+	 * 通过Unix domain socket连接hostUrl的主机（如本机的sidecar代理），请求的URL和Host头不变，省去本机TCP回环的开销。
+	 * 需要Java 16及以上版本。
+	 * 
+	 * @param unixSocketPath socket文件路径，如“/var/run/envoy.sock”
+	 */
+	public HostConfigBuilder setUnixSocketPath(String unixSocketPath) {
+		this.unixSocketPath = unixSocketPath;
+		return this;
+	}
+
 	public static HostConfigBuilder create() {
 		return new HostConfigBuilder();
 	}
@@ -217,6 +380,40 @@ public class HostConfigBuilder {
 		hostCofing.setPoolSize(poolSize);
 		hostCofing.setReferer(referer);
 		hostCofing.setUserAgent(userAgent);
+		hostCofing.setDeadline(deadline);
+		hostCofing.setIdleConnectionTimeout(idleConnectionTimeout);
+		hostCofing.setEvictionPeriod(evictionPeriod);
+		hostCofing.setRouteMaxConnections(new HashMap<HttpHost, Integer>(routeMaxConnections));
+		
+		Map<HttpHost, RequestConfig> routeRequestConfigs = new HashMap<HttpHost, RequestConfig>();
+		
+		for (Map.Entry<HttpHost, int[]> entry : routeTimeouts.entrySet()) {
+			routeRequestConfigs.put(entry.getKey(), RequestConfig.copy(requestConfig)
+					.setConnectTimeout(entry.getValue()[0]).setSocketTimeout(entry.getValue()[1]).build());
+		}
+		
+		hostCofing.setRouteRequestConfigs(routeRequestConfigs);
+		
+		if (!hostUrls.isEmpty()) {
+			hostCofing.setHostUrls(new ArrayList<String>(hostUrls));
+			hostCofing.setHostSelectionStrategy(hostSelectionStrategy != null ? hostSelectionStrategy
+					: HostSelectionStrategies.roundRobin());
+		}
+		
+		if (unixSocketPath != null) {
+			Args.notNull(httpHost, "hostUrl");
+			hostCofing.setUnixSocketPath(unixSocketPath);
+		}
+		
+		if (rateLimit > 0 || !pathRateLimits.isEmpty()) {
+			HostRateLimiter rateLimiter = new HostRateLimiter(rateLimit > 0 ? new TokenBucket(rateLimit) : null, rateLimitTimeout);
+			
+			for (Map.Entry<String, Double> entry : pathRateLimits.entrySet()) {
+				rateLimiter.addPathBucket(entry.getKey(), new TokenBucket(entry.getValue()));
+			}
+			
+			hostCofing.setRateLimiter(rateLimiter);
+		}
 		
 		return hostCofing;
 	}
@@ -0,0 +1,177 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.http.util.Args;
+
+/**
+ * HostConfig的客户端限流：一个全局令牌桶，以及按URL路径匹配的令牌桶（按添加顺序取第一个匹配的）。
+ * 请求需要同时获得路径和全局的令牌。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class HostRateLimiter {
+
+	private final TokenBucket globalBucket;
+
+	private final List<PathBucket> pathBuckets = new ArrayList<PathBucket>();
+
+	private final long timeout;
+
+	/**
+	 * @param globalBucket 全局令牌桶，可为null
+	 * @param timeout 获取令牌的最长等待时间，单位：毫秒，0表示不等待，小于0表示一直等待
+	 */
+	public HostRateLimiter(TokenBucket globalBucket, long timeout) {
+		this.globalBucket = globalBucket;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param pathPattern URL路径，“*”匹配任意字符，如“/pay/*”
+	 * @param bucket
+	 * @return
+	 */
+	public HostRateLimiter addPathBucket(String pathPattern, TokenBucket bucket) {
+		Args.notEmpty(pathPattern, "pathPattern");
+		Args.notNull(bucket, "bucket");
+
+		pathBuckets.add(new PathBucket(pathPattern, bucket));
+		return this;
+	}
+
+	/**
+	 * 按配置的等待时间获取令牌
+	 *
+	 * @param path 请求的URL路径
+	 * @return 是否获得令牌
+	 * @throws InterruptedException
+	 */
+	public boolean acquire(String path) throws InterruptedException {
+		return acquire(path, timeout);
+	}
+
+	/**
+	 * @param path 请求的URL路径
+	 * @param timeout 最长等待时间，单位：毫秒，0表示不等待，小于0表示一直等待
+	 * @return 是否获得令牌
+	 * @throws InterruptedException
+	 */
+	public boolean acquire(String path, long timeout) throws InterruptedException {
+
+		long wait = reserve(path, timeout < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(timeout));
+
+		if (wait < 0)
+			return false;
+
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+
+		return true;
+	}
+
+	/**
+	 * 不等待，立即返回是否获得令牌
+	 *
+	 * @param path 请求的URL路径
+	 * @return
+	 */
+	public boolean tryAcquire(String path) {
+		return reserve(path, 0) == 0;
+	}
+
+	/**
+	 * @return 获取令牌的最长等待时间，单位：毫秒，0表示不等待，小于0表示一直等待
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * 同时预约路径和全局的令牌，其中一个在timeoutNanos内得不到令牌时归还另一个
+	 *
+	 * @return 需要等待的纳秒数，得不到令牌时返回-1
+	 */
+	private long reserve(String path, long timeoutNanos) {
+
+		TokenBucket pathBucket = getPathBucket(path);
+		long wait = 0;
+
+		if (pathBucket != null) {
+			wait = pathBucket.reserve(timeoutNanos);
+
+			if (wait < 0)
+				return -1;
+		}
+
+		if (globalBucket != null) {
+			long globalWait = globalBucket.reserve(timeoutNanos);
+
+			if (globalWait < 0) {
+				if (pathBucket != null)
+					pathBucket.refund();
+
+				return -1;
+			}
+
+			wait = Math.max(wait, globalWait);
+		}
+
+		return wait;
+	}
+
+	private TokenBucket getPathBucket(String path) {
+
+		if (path == null)
+			return null;
+
+		for (PathBucket pathBucket : pathBuckets) {
+			if (pathBucket.pattern.matcher(path).matches())
+				return pathBucket.bucket;
+		}
+
+		return null;
+	}
+
+	private static class PathBucket {
+
+		final Pattern pattern;
+
+		final TokenBucket bucket;
+
+		PathBucket(String pathPattern, TokenBucket bucket) {
+
+			String[] parts = pathPattern.split("\\*", -1);
+			StringBuilder regex = new StringBuilder();
+
+			for (int i = 0; i < parts.length; i++) {
+				if (i > 0)
+					regex.append(".*");
+				regex.append(Pattern.quote(parts[i]));
+			}
+
+			this.pattern = Pattern.compile(regex.toString());
+			this.bucket = bucket;
+		}
+	}
+
+}
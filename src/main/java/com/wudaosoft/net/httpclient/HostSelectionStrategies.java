@@ -0,0 +1,132 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 内置的负载均衡策略。Request只把未被摘除且熔断器放行的实例交给策略选择。
+ *
+ * @author changsoul.wu
+ *
+ */
+public final class HostSelectionStrategies {
+
+	private HostSelectionStrategies() {
+	}
+
+	/**
+	 * 跳过被摘除和熔断中的实例后按策略选择，所有实例都不可用时在全部实例中选择
+	 *
+	 * @param circuitBreaker 为null时只跳过被摘除的实例
+	 */
+	static UpstreamHost selectAvailable(HostSelectionStrategy strategy, List<UpstreamHost> hosts,
+			CircuitBreaker circuitBreaker) {
+
+		List<UpstreamHost> available = new ArrayList<UpstreamHost>(hosts.size());
+
+		for (UpstreamHost host : hosts) {
+			if (!host.isEjected() && (circuitBreaker == null || circuitBreaker.isAllowing(host.getHost())))
+				available.add(host);
+		}
+
+		return strategy.select(available.isEmpty() ? hosts : available);
+	}
+
+	/**
+	 * @return 轮询
+	 */
+	public static HostSelectionStrategy roundRobin() {
+		return new HostSelectionStrategy() {
+
+			private final AtomicInteger next = new AtomicInteger();
+
+			@Override
+			public UpstreamHost select(List<UpstreamHost> hosts) {
+				return hosts.get((next.getAndIncrement() & Integer.MAX_VALUE) % hosts.size());
+			}
+		};
+	}
+
+	/**
+	 * @return 选择正在执行的请求数最少的实例，相同时轮询
+	 */
+	public static HostSelectionStrategy leastInFlight() {
+		return new HostSelectionStrategy() {
+
+			private final AtomicInteger next = new AtomicInteger();
+
+			@Override
+			public UpstreamHost select(List<UpstreamHost> hosts) {
+
+				int size = hosts.size();
+				int offset = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+				UpstreamHost best = null;
+
+				for (int i = 0; i < size; i++) {
+					UpstreamHost host = hosts.get((offset + i) % size);
+
+					if (best == null || host.getInFlight() < best.getInFlight())
+						best = host;
+				}
+
+				return best;
+			}
+		};
+	}
+
+	/**
+	 * 随机取两个实例，选择平均耗时与（正在执行的请求数 + 1）的乘积较小的一个。
+	 * 兼顾耗时和负载，且不会像总是选最快的实例那样把请求集中到一个实例上。
+	 * 
+	 * @return power of two choices
+	 */
+	public static HostSelectionStrategy powerOfTwoChoices() {
+		return new HostSelectionStrategy() {
+
+			private final Random random = new Random();
+
+			@Override
+			public UpstreamHost select(List<UpstreamHost> hosts) {
+
+				int size = hosts.size();
+
+				if (size == 1)
+					return hosts.get(0);
+
+				int a = random.nextInt(size);
+				int b = random.nextInt(size - 1);
+
+				if (b >= a)
+					b++;
+
+				UpstreamHost first = hosts.get(a);
+				UpstreamHost second = hosts.get(b);
+
+				return cost(first) <= cost(second) ? first : second;
+			}
+
+			private double cost(UpstreamHost host) {
+				// 还没有耗时数据的实例优先，以便尽快得到数据
+				return host.getLatency() * (host.getInFlight() + 1);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,34 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.List;
+
+/**
+ * 负载均衡策略：为每次请求从多个上游实例中选择一个，常用的实现见{@link HostSelectionStrategies}。
+ *
+ * @author changsoul.wu
+ *
+ */
+public interface HostSelectionStrategy {
+
+	/**
+	 * @param hosts 可用的上游实例（跳过了被摘除和熔断中的实例，都不可用时为所有实例），不为空
+	 * @return 选中的实例
+	 */
+	UpstreamHost select(List<UpstreamHost> hosts);
+
+}
@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.HttpClientConnectionManager;
+
+/**
+ * 在共用的定时线程中定期关闭连接池中过期和空闲过久的连接，所有Request共用一个线程。
+ * 只持有连接池的弱引用，未调用shutdown的Request被回收后任务自动取消。
+ *
+ * @author changsoul.wu
+ *
+ */
+class IdleConnectionEvictor implements Runnable {
+
+	private final WeakReference<HttpClientConnectionManager> connManagerRef;
+
+	private final long idleTimeout;
+
+	private volatile ScheduledFuture<?> future;
+
+	private IdleConnectionEvictor(HttpClientConnectionManager connManager, long idleTimeout) {
+		this.connManagerRef = new WeakReference<HttpClientConnectionManager>(connManager);
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @param connManager
+	 * @param idleTimeout 空闲超过该时间的连接被关闭，单位：毫秒，小于等于0时只关闭过期的连接
+	 * @param period 检查间隔，单位：毫秒
+	 * @return
+	 */
+	static IdleConnectionEvictor start(HttpClientConnectionManager connManager, long idleTimeout, long period) {
+
+		IdleConnectionEvictor evictor = new IdleConnectionEvictor(connManager, idleTimeout);
+		evictor.future = SharedScheduler.scheduleWithFixedDelay(evictor, period, period, TimeUnit.MILLISECONDS);
+
+		return evictor;
+	}
+
+	@Override
+	public void run() {
+
+		HttpClientConnectionManager connManager = connManagerRef.get();
+
+		if (connManager == null) {
+			shutdown();
+			return;
+		}
+
+		try {
+			connManager.closeExpiredConnections();
+
+			if (idleTimeout > 0)
+				connManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+		} catch (RuntimeException e) {
+			// 不能让异常终止定时任务
+		}
+	}
+
+	void shutdown() {
+		ScheduledFuture<?> f = future;
+
+		if (f != null)
+			f.cancel(false);
+	}
+
+}
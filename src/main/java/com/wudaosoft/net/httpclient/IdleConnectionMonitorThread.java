@@ -23,7 +23,10 @@ import org.apache.http.conn.HttpClientConnectionManager;
 /**
  * @author changsoul.wu
  *
+ * @deprecated 每个实例占用一个线程。Request已改为在共用的定时线程中清理连接，
+ * 见{@link HostConfigBuilder#setIdleConnectionTimeout(long)}和{@link HostConfigBuilder#setEvictionPeriod(long)}
  */
+@Deprecated
 public class IdleConnectionMonitorThread extends Thread {
     
     private final HttpClientConnectionManager connMgr;
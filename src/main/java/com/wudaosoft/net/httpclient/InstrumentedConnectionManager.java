@@ -0,0 +1,149 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * 记录每个路由从连接池获取连接的等待时间和超时次数，供{@link PoolSizeController}调整连接数。
+ * 被中止或取消的请求（如对冲请求中落后的请求）不计入。
+ *
+ * @author changsoul.wu
+ *
+ */
+class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager implements InstrumentedPool {
+
+	private final ConcurrentMap<HttpRoute, LeaseStats> leaseStats = new ConcurrentHashMap<HttpRoute, LeaseStats>();
+
+	InstrumentedConnectionManager(HttpClientConnectionOperator connectionOperator) {
+		super(connectionOperator, null, -1, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(final HttpRoute route, Object state) {
+
+		final ConnectionRequest connRequest = super.requestConnection(route, state);
+
+		return new ConnectionRequest() {
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+
+				long start = System.nanoTime();
+
+				try {
+					HttpClientConnection conn = connRequest.get(timeout, tunit);
+					getLeaseStats(route).record(System.nanoTime() - start, false);
+					return conn;
+				} catch (ConnectionPoolTimeoutException e) {
+					getLeaseStats(route).record(System.nanoTime() - start, true);
+					throw e;
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+				return connRequest.cancel();
+			}
+		};
+	}
+
+	@Override
+	public LeaseStats.Sample drainLeaseStats(HttpRoute route) {
+		return getLeaseStats(route).drain();
+	}
+
+	private LeaseStats getLeaseStats(HttpRoute route) {
+
+		LeaseStats stats = leaseStats.get(route);
+
+		if (stats == null) {
+			stats = new LeaseStats();
+			LeaseStats existing = leaseStats.putIfAbsent(route, stats);
+			if (existing != null)
+				stats = existing;
+		}
+
+		return stats;
+	}
+
+	static class LeaseStats {
+
+		private final AtomicLong count = new AtomicLong();
+
+		private final AtomicLong totalWaitNanos = new AtomicLong();
+
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+
+		private final AtomicLong failures = new AtomicLong();
+
+		void record(long waitNanos, boolean failed) {
+
+			count.incrementAndGet();
+			totalWaitNanos.addAndGet(waitNanos);
+
+			if (failed)
+				failures.incrementAndGet();
+
+			while (true) {
+				long max = maxWaitNanos.get();
+
+				if (waitNanos <= max || maxWaitNanos.compareAndSet(max, waitNanos))
+					break;
+			}
+		}
+
+		Sample drain() {
+			return new Sample(count.getAndSet(0), totalWaitNanos.getAndSet(0), maxWaitNanos.getAndSet(0),
+					failures.getAndSet(0));
+		}
+
+		static class Sample {
+
+			final long count;
+
+			final long totalWaitNanos;
+
+			final long maxWaitNanos;
+
+			final long failures;
+
+			Sample(long count, long totalWaitNanos, long maxWaitNanos, long failures) {
+				this.count = count;
+				this.totalWaitNanos = totalWaitNanos;
+				this.maxWaitNanos = maxWaitNanos;
+				this.failures = failures;
+			}
+
+			long getAverageWaitNanos() {
+				return count == 0 ? 0 : totalWaitNanos / count;
+			}
+		}
+	}
+
+}
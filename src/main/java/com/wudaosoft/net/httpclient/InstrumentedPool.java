@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.Set;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+
+/**
+ * 带获取连接等待时间统计的连接池，供{@link PoolSizeController}调整连接数
+ *
+ * @author changsoul.wu
+ *
+ */
+interface InstrumentedPool extends ConnPoolControl<HttpRoute> {
+
+	Set<HttpRoute> getRoutes();
+
+	/**
+	 * 取出上次调用以来的统计并清零
+	 */
+	InstrumentedConnectionManager.LeaseStats.Sample drainLeaseStats(HttpRoute route);
+
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记录最近若干次请求的耗时，用于计算分位数。
+ *
+ * @author changsoul.wu
+ *
+ */
+class LatencyRecorder {
+
+	private static final int MIN_SAMPLES = 20;
+
+	private static final long PERCENTILE_CACHE_MILLIS = 1000;
+
+	private final long[] samples;
+
+	private final AtomicLong count = new AtomicLong();
+
+	private volatile long cachedP95 = -1;
+
+	private volatile long cachedAt;
+
+	LatencyRecorder(int capacity) {
+		this.samples = new long[capacity];
+	}
+
+	/**
+	 * @param millis 请求耗时，单位：毫秒
+	 */
+	void record(long millis) {
+		int index = (int) (count.getAndIncrement() % samples.length);
+		samples[index] = millis;
+	}
+
+	/**
+	 * @return 最近请求耗时的P95，样本不足时返回-1
+	 */
+	long p95() {
+
+		long now = System.currentTimeMillis();
+
+		if (now - cachedAt < PERCENTILE_CACHE_MILLIS)
+			return cachedP95;
+
+		int size = (int) Math.min(count.get(), samples.length);
+		long p95 = -1;
+
+		if (size >= MIN_SAMPLES) {
+			long[] copy = Arrays.copyOf(samples, size);
+			Arrays.sort(copy);
+			p95 = copy[(int) Math.ceil(size * 0.95) - 1];
+		}
+
+		cachedP95 = p95;
+		cachedAt = now;
+
+		return p95;
+	}
+
+}
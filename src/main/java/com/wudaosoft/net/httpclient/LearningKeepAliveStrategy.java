@@ -0,0 +1,384 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按目标主机学习连接的保持时间：很多服务端空闲几秒后就关闭连接但不返回Keep-Alive头，复用这样的连接时写请求失败再重试。
+ * 复用空闲了t毫秒的连接在收到任何响应数据前失败时（NoHttpResponseException、连接被重置等），该主机的保持时间降为t乘以safetyRatio，
+ * 之后释放的连接空闲超过该时间就不再复用。空闲时间从连接释放回连接池时开始计算。每隔relearnInterval没有再失败时保持时间增加25%，直到默认值。
+ * 响应带Keep-Alive头时取头中的timeout和学到的值中较小的一个。
+ * <p>
+ * 通过{@link Request.Builder#setKeepAliveStrategy(ConnectionKeepAliveStrategy)}设置，连接失败由Request的重试处理告知。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class LearningKeepAliveStrategy implements ConnectionKeepAliveStrategy {
+
+	private static final Logger log = LoggerFactory.getLogger(LearningKeepAliveStrategy.class);
+
+	static final String IDLE_TIME = "com.wudaosoft.net.httpclient.idle-time";
+
+	private static final long PURGE_INTERVAL = 60 * 1000;
+
+	private long defaultKeepAlive = 30 * 1000;
+
+	private long minKeepAlive = 1000;
+
+	private double safetyRatio = 0.8;
+
+	private long relearnInterval = 10 * 60 * 1000;
+
+	private final ConcurrentMap<HttpHost, HostKeepAlive> hosts = new ConcurrentHashMap<HttpHost, HostKeepAlive>();
+
+	/**
+	 * 连接ID对应的空闲开始时间（释放回连接池的时间）
+	 */
+	private final ConcurrentMap<String, IdleConnection> idleConnections = new ConcurrentHashMap<String, IdleConnection>();
+
+	private volatile long lastPurgeAt = System.currentTimeMillis();
+
+	/**
+	 * @param defaultKeepAlive 默认的保持时间，也是学习的上限，单位：毫秒，默认30000
+	 */
+	public LearningKeepAliveStrategy setDefaultKeepAlive(long defaultKeepAlive) {
+		this.defaultKeepAlive = Args.positive(defaultKeepAlive, "defaultKeepAlive");
+		return this;
+	}
+
+	/**
+	 * @param minKeepAlive 学习的下限，单位：毫秒，默认1000
+	 */
+	public LearningKeepAliveStrategy setMinKeepAlive(long minKeepAlive) {
+		this.minKeepAlive = Args.positive(minKeepAlive, "minKeepAlive");
+		return this;
+	}
+
+	/**
+	 * @param safetyRatio 保持时间取失败连接空闲时间的比例，默认0.8
+	 */
+	public LearningKeepAliveStrategy setSafetyRatio(double safetyRatio) {
+		Args.check(safetyRatio > 0 && safetyRatio <= 1, "safetyRatio must be in (0, 1]");
+		this.safetyRatio = safetyRatio;
+		return this;
+	}
+
+	/**
+	 * @param relearnInterval 多长时间没有失败时增加保持时间，单位：毫秒，默认10分钟
+	 */
+	public LearningKeepAliveStrategy setRelearnInterval(long relearnInterval) {
+		this.relearnInterval = Args.positive(relearnInterval, "relearnInterval");
+		return this;
+	}
+
+	@Override
+	public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+
+		long duration = defaultKeepAlive;
+
+		HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+
+		if (target != null)
+			duration = getHost(target).getKeepAlive();
+
+		// Honor 'keep-alive' header
+		HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+		while (it.hasNext()) {
+			HeaderElement he = it.nextElement();
+			String param = he.getName();
+			String value = he.getValue();
+			if (value != null && param.equalsIgnoreCase("timeout")) {
+				try {
+					duration = Math.min(duration, Long.parseLong(value) * 1000);
+				} catch (NumberFormatException ignore) {
+				}
+			}
+		}
+
+		return duration;
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机当前的保持时间，单位：毫秒
+	 */
+	public long getKeepAlive(HttpHost host) {
+		HostKeepAlive keepAlive = hosts.get(host);
+		return keepAlive != null ? keepAlive.getKeepAlive() : defaultKeepAlive;
+	}
+
+	/**
+	 * @return 所有目标主机当前的保持时间，单位：毫秒
+	 */
+	public Map<HttpHost, Long> getKeepAlives() {
+
+		Map<HttpHost, Long> keepAlives = new HashMap<HttpHost, Long>();
+
+		for (Map.Entry<HttpHost, HostKeepAlive> entry : hosts.entrySet()) {
+			keepAlives.put(entry.getKey(), entry.getValue().getKeepAlive());
+		}
+
+		return keepAlives;
+	}
+
+	/**
+	 * 发送请求前记录复用的连接已空闲的时间；收到任何响应数据后，失败不再视为连接已被服务端关闭
+	 */
+	HttpRequestExecutor createRequestExecutor() {
+		return new HttpRequestExecutor() {
+
+			@Override
+			public HttpResponse execute(HttpRequest request, HttpClientConnection conn, HttpContext context)
+					throws IOException, HttpException {
+
+				context.removeAttribute(IDLE_TIME);
+
+				if (conn instanceof ManagedHttpClientConnection) {
+					IdleConnection idle = idleConnections.remove(((ManagedHttpClientConnection) conn).getId());
+
+					if (idle != null)
+						context.setAttribute(IDLE_TIME, System.currentTimeMillis() - idle.since);
+				}
+
+				long received = conn.getMetrics().getReceivedBytesCount();
+
+				try {
+					HttpResponse response = super.execute(request, conn, context);
+					context.removeAttribute(IDLE_TIME);
+					return response;
+				} catch (IOException e) {
+					// 已读到部分响应，连接在空闲时并没有被关闭
+					if (conn.getMetrics().getReceivedBytesCount() > received)
+						context.removeAttribute(IDLE_TIME);
+					throw e;
+				}
+			}
+		};
+	}
+
+	/**
+	 * 包装连接管理器，连接释放回连接池时开始计算空闲时间
+	 */
+	HttpClientConnectionManager track(final HttpClientConnectionManager connManager) {
+		return new HttpClientConnectionManager() {
+
+			@Override
+			public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+				return connManager.requestConnection(route, state);
+			}
+
+			@Override
+			public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration,
+					TimeUnit timeUnit) {
+
+				if (conn instanceof ManagedHttpClientConnection) {
+					String id = ((ManagedHttpClientConnection) conn).getId();
+
+					if (conn.isOpen()) {
+						long now = System.currentTimeMillis();
+						// 不限时长（Keep-Alive: timeout=0等）时也要有过期时间，否则被空闲回收关闭的连接永远不会被清除
+						long expiry = validDuration > 0
+								? now + (timeUnit != null ? timeUnit : TimeUnit.MILLISECONDS).toMillis(validDuration)
+								: now + defaultKeepAlive;
+
+						idleConnections.put(id, new IdleConnection(now, expiry));
+						purge(now);
+					} else {
+						idleConnections.remove(id);
+					}
+				}
+
+				connManager.releaseConnection(conn, newState, validDuration, timeUnit);
+			}
+
+			@Override
+			public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+					throws IOException {
+				connManager.connect(conn, route, connectTimeout, context);
+			}
+
+			@Override
+			public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+				connManager.upgrade(conn, route, context);
+			}
+
+			@Override
+			public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context)
+					throws IOException {
+				connManager.routeComplete(conn, route, context);
+			}
+
+			@Override
+			public void closeIdleConnections(long idletime, TimeUnit tunit) {
+				connManager.closeIdleConnections(idletime, tunit);
+			}
+
+			@Override
+			public void closeExpiredConnections() {
+				connManager.closeExpiredConnections();
+			}
+
+			@Override
+			public void shutdown() {
+				connManager.shutdown();
+			}
+		};
+	}
+
+	/**
+	 * 包装重试处理，复用的连接失败时学习保持时间
+	 */
+	HttpRequestRetryHandler observe(final HttpRequestRetryHandler retryHandler) {
+		return new HttpRequestRetryHandler() {
+
+			@Override
+			public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+
+				Object idleTime = context.removeAttribute(IDLE_TIME);
+
+				if (idleTime != null
+						&& (exception instanceof NoHttpResponseException || exception instanceof SocketException)) {
+					HttpHost target = HttpClientContext.adapt(context).getTargetHost();
+
+					if (target != null)
+						getHost(target).onStaleConnection((Long) idleTime);
+				}
+
+				return retryHandler.retryRequest(exception, executionCount, context);
+			}
+		};
+	}
+
+	private HostKeepAlive getHost(HttpHost host) {
+
+		HostKeepAlive keepAlive = hosts.get(host);
+
+		if (keepAlive == null) {
+			keepAlive = new HostKeepAlive(host);
+			HostKeepAlive existing = hosts.putIfAbsent(host, keepAlive);
+			if (existing != null)
+				keepAlive = existing;
+		}
+
+		return keepAlive;
+	}
+
+	/**
+	 * 已过期的连接不会再被复用，定期清除
+	 */
+	private void purge(long now) {
+
+		if (now - lastPurgeAt < PURGE_INTERVAL)
+			return;
+
+		lastPurgeAt = now;
+
+		for (Iterator<IdleConnection> it = idleConnections.values().iterator(); it.hasNext();) {
+			if (it.next().expiry < now)
+				it.remove();
+		}
+	}
+
+	private static class IdleConnection {
+
+		final long since;
+
+		final long expiry;
+
+		IdleConnection(long since, long expiry) {
+			this.since = since;
+			this.expiry = expiry;
+		}
+	}
+
+	private class HostKeepAlive {
+
+		final HttpHost host;
+
+		volatile long keepAlive = defaultKeepAlive;
+
+		volatile long changedAt = System.currentTimeMillis();
+
+		HostKeepAlive(HttpHost host) {
+			this.host = host;
+		}
+
+		long getKeepAlive() {
+
+			long current = keepAlive;
+
+			if (current < defaultKeepAlive && System.currentTimeMillis() - changedAt > relearnInterval) {
+				synchronized (this) {
+					if (System.currentTimeMillis() - changedAt > relearnInterval) {
+						keepAlive = current = Math.min(defaultKeepAlive, (long) (keepAlive * 1.25));
+						changedAt = System.currentTimeMillis();
+					}
+				}
+			}
+
+			return current;
+		}
+
+		synchronized void onStaleConnection(long idleTime) {
+
+			long learned = Math.max(minKeepAlive, (long) (idleTime * safetyRatio));
+
+			changedAt = System.currentTimeMillis();
+
+			if (learned < keepAlive) {
+				keepAlive = learned;
+
+				if (log.isDebugEnabled()) {
+					log.debug("Connection to " + host + " was closed after " + idleTime + "ms idle, keep alive "
+							+ learned + "ms");
+				}
+			}
+		}
+	}
+
+}
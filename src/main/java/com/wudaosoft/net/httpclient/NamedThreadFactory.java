@@ -0,0 +1,46 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 创建带名称前缀的守护线程
+ *
+ * @author changsoul.wu
+ *
+ */
+class NamedThreadFactory implements ThreadFactory {
+
+	private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+	private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+	private final String namePrefix;
+
+	NamedThreadFactory(String name) {
+		this.namePrefix = name + "-" + poolNumber.getAndIncrement() + "-";
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread t = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+		t.setDaemon(true);
+		return t;
+	}
+
+}
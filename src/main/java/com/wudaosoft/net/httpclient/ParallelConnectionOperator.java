@@ -0,0 +1,413 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.HttpHostConnectException;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 并行建立连接（Happy Eyeballs）：主机解析出多个地址时，IPv6和IPv4地址交替排列，
+ * 每隔stagger毫秒向下一个地址发起连接，前一个地址连接失败时立即尝试下一个，使用最先建立成功的连接（HTTPS包括TLS握手），其余的关闭。
+ * 避免第一个地址不通时要等满connectTimeout才尝试下一个地址。只有一个地址时与默认的连接方式相同。
+ * 连接期间在连接上绑定一个占位的socket，请求被中止（关闭连接）时关闭所有正在进行的尝试并立即返回。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class ParallelConnectionOperator implements HttpClientConnectionOperator {
+
+	private static final Logger log = LoggerFactory.getLogger(ParallelConnectionOperator.class);
+
+	private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
+
+	private final DnsResolver dnsResolver;
+
+	private final long stagger;
+
+	private final DefaultHttpClientConnectionOperator delegate;
+
+	private volatile ExecutorService connectExecutor;
+
+	private volatile boolean isShutdown;
+
+	/**
+	 * @param socketFactoryRegistry
+	 * @param dnsResolver 为null时使用JVM的解析
+	 * @param stagger 相邻两次连接尝试的间隔，单位：毫秒
+	 */
+	public ParallelConnectionOperator(Lookup<ConnectionSocketFactory> socketFactoryRegistry, DnsResolver dnsResolver,
+			long stagger) {
+		this.socketFactoryRegistry = Args.notNull(socketFactoryRegistry, "socketFactoryRegistry");
+		this.dnsResolver = dnsResolver != null ? dnsResolver : SystemDefaultDnsResolver.INSTANCE;
+		this.stagger = Args.positive(stagger, "stagger");
+		this.delegate = new DefaultHttpClientConnectionOperator(socketFactoryRegistry, null, this.dnsResolver);
+	}
+
+	@Override
+	public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress,
+			int connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+
+		InetAddress[] addresses = host.getAddress() != null ? new InetAddress[] { host.getAddress() }
+				: dnsResolver.resolve(host.getHostName());
+
+		if (addresses.length < 2 || isShutdown) {
+			delegate.connect(conn, host, localAddress, connectTimeout, socketConfig, context);
+			return;
+		}
+
+		ConnectionSocketFactory sf = socketFactoryRegistry.lookup(host.getSchemeName());
+
+		if (sf == null)
+			throw new UnsupportedSchemeException(host.getSchemeName() + " protocol is not supported");
+
+		int port = DefaultSchemePortResolver.INSTANCE.resolve(host);
+		InetAddress[] ordered = interleave(addresses);
+		Race race = new Race();
+		CompletionService<Socket> completionService = new ExecutorCompletionService<Socket>(getConnectExecutor());
+		Socket winner = null;
+		IOException lastError = null;
+		int next = 0;
+		int pending = 0;
+
+		// 与DefaultHttpClientConnectionOperator一样在连接前绑定socket，请求被中止时能关闭正在进行的尝试
+		conn.bind(new RacePlaceholder(race));
+
+		try {
+			completionService.submit(new Attempt(race, sf, host, new InetSocketAddress(ordered[next++], port),
+					localAddress, connectTimeout, socketConfig, context));
+			pending++;
+
+			while (pending > 0) {
+
+				Future<Socket> future = next < ordered.length
+						? completionService.poll(stagger, TimeUnit.MILLISECONDS)
+						: completionService.take();
+
+				if (race.isAborted())
+					throw new InterruptedIOException("Connect to " + host + " aborted");
+
+				if (future != null) {
+					pending--;
+					try {
+						winner = future.get();
+						break;
+					} catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException) {
+							lastError = (IOException) e.getCause();
+						} else if (e.getCause() instanceof RuntimeException) {
+							throw (RuntimeException) e.getCause();
+						} else {
+							throw new IOException(e.getCause());
+						}
+					}
+				}
+
+				// 间隔时间到了或有连接失败，尝试下一个地址
+				if (next < ordered.length) {
+					completionService.submit(new Attempt(race, sf, host, new InetSocketAddress(ordered[next++], port),
+							localAddress, connectTimeout, socketConfig, context));
+					pending++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Connect to " + host + " interrupted");
+		} finally {
+			race.finish(winner);
+		}
+
+		if (winner == null) {
+			if (lastError instanceof SocketTimeoutException)
+				throw new ConnectTimeoutException(lastError, host, addresses);
+			if (lastError instanceof ConnectException)
+				throw new HttpHostConnectException(lastError, host, addresses);
+			throw lastError;
+		}
+
+		if (log.isDebugEnabled()) {
+			log.debug("Connected to " + host + " via " + winner.getRemoteSocketAddress());
+		}
+
+		conn.bind(winner);
+	}
+
+	@Override
+	public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context) throws IOException {
+		delegate.upgrade(conn, host, context);
+	}
+
+	/**
+	 * @return 相邻两次连接尝试的间隔，单位：毫秒
+	 */
+	public long getStagger() {
+		return stagger;
+	}
+
+	/**
+	 * 关闭连接线程，之后按默认方式依次连接各地址
+	 */
+	void shutdown() {
+
+		isShutdown = true;
+
+		synchronized (this) {
+			if (connectExecutor != null)
+				connectExecutor.shutdown();
+		}
+	}
+
+	private ExecutorService getConnectExecutor() {
+
+		ExecutorService result = connectExecutor;
+
+		if (result == null) {
+			synchronized (this) {
+				result = connectExecutor;
+				if (result == null) {
+					// 连接会阻塞，空闲线程60秒后回收
+					connectExecutor = result = Executors.newCachedThreadPool(new NamedThreadFactory("http-connect"));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * IPv6和IPv4地址交替排列，以第一个地址的类型开头，同类型地址保持原顺序
+	 */
+	static InetAddress[] interleave(InetAddress[] addresses) {
+
+		List<InetAddress> first = new ArrayList<InetAddress>();
+		List<InetAddress> second = new ArrayList<InetAddress>();
+		boolean firstIsV6 = addresses[0] instanceof Inet6Address;
+
+		for (InetAddress address : addresses) {
+			if ((address instanceof Inet6Address) == firstIsV6) {
+				first.add(address);
+			} else {
+				second.add(address);
+			}
+		}
+
+		InetAddress[] result = new InetAddress[addresses.length];
+
+		for (int i = 0, j = 0, k = 0; i < result.length; i++) {
+			if (k >= second.size() || (j < first.size() && j <= k)) {
+				result[i] = first.get(j++);
+			} else {
+				result[i] = second.get(k++);
+			}
+		}
+
+		return result;
+	}
+
+	private static void closeQuietly(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+	/**
+	 * 记录各次尝试的socket，选出连接后关闭其余的
+	 */
+	private static class Race {
+
+		private final List<Socket> sockets = new ArrayList<Socket>();
+
+		private boolean finished;
+
+		private boolean aborted;
+
+		/**
+		 * @return 已选出连接时返回false，调用者需自行关闭socket
+		 */
+		synchronized boolean register(Socket socket) {
+
+			if (finished)
+				return false;
+
+			sockets.add(socket);
+			return true;
+		}
+
+		/**
+		 * 用建立好的SSLSocket替换原来的socket
+		 *
+		 * @return 已选出连接时返回false，调用者需自行关闭socket
+		 */
+		synchronized boolean replace(Socket socket, Socket connected) {
+
+			if (finished)
+				return false;
+
+			sockets.set(sockets.indexOf(socket), connected);
+			return true;
+		}
+
+		synchronized void finish(Socket winner) {
+
+			finished = true;
+
+			for (Socket socket : sockets) {
+				if (socket != winner)
+					closeQuietly(socket);
+			}
+
+			sockets.clear();
+		}
+
+		/**
+		 * 连接被中止，关闭所有尝试（包括已建立但还没有绑定到连接的socket）
+		 */
+		synchronized void abort() {
+
+			if (!finished)
+				aborted = true;
+
+			finish(null);
+		}
+
+		synchronized boolean isAborted() {
+			return aborted;
+		}
+	}
+
+	/**
+	 * 竞速期间绑定在连接上，连接被关闭时中止竞速
+	 */
+	private static class RacePlaceholder extends Socket {
+
+		private final Race race;
+
+		RacePlaceholder(Race race) {
+			this.race = race;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			race.abort();
+			super.close();
+		}
+	}
+
+	private static class Attempt implements Callable<Socket> {
+
+		private final Race race;
+
+		private final ConnectionSocketFactory sf;
+
+		private final HttpHost host;
+
+		private final InetSocketAddress remoteAddress;
+
+		private final InetSocketAddress localAddress;
+
+		private final int connectTimeout;
+
+		private final SocketConfig socketConfig;
+
+		private final HttpContext context;
+
+		Attempt(Race race, ConnectionSocketFactory sf, HttpHost host, InetSocketAddress remoteAddress,
+				InetSocketAddress localAddress, int connectTimeout, SocketConfig socketConfig, HttpContext context) {
+			this.race = race;
+			this.sf = sf;
+			this.host = host;
+			this.remoteAddress = remoteAddress;
+			this.localAddress = localAddress;
+			this.connectTimeout = connectTimeout;
+			this.socketConfig = socketConfig;
+			this.context = context;
+		}
+
+		@Override
+		public Socket call() throws IOException {
+
+			Socket sock = sf.createSocket(context);
+
+			if (!race.register(sock)) {
+				closeQuietly(sock);
+				throw new InterruptedIOException("Connect to " + remoteAddress + " cancelled");
+			}
+
+			sock.setSoTimeout(socketConfig.getSoTimeout());
+			sock.setReuseAddress(socketConfig.isSoReuseAddress());
+			sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
+			sock.setKeepAlive(socketConfig.isSoKeepAlive());
+
+			if (socketConfig.getRcvBufSize() > 0)
+				sock.setReceiveBufferSize(socketConfig.getRcvBufSize());
+
+			if (socketConfig.getSndBufSize() > 0)
+				sock.setSendBufferSize(socketConfig.getSndBufSize());
+
+			if (socketConfig.getSoLinger() >= 0)
+				sock.setSoLinger(true, socketConfig.getSoLinger());
+
+			if (log.isDebugEnabled()) {
+				log.debug("Connecting to " + remoteAddress);
+			}
+
+			Socket connected = sf.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+
+			// HTTPS时返回的是包装了sock的SSLSocket
+			if (connected != sock && !race.replace(sock, connected)) {
+				closeQuietly(connected);
+				throw new InterruptedIOException("Connect to " + remoteAddress + " cancelled");
+			}
+
+			return connected;
+		}
+	}
+
+}
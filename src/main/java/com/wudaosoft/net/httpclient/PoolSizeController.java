@@ -0,0 +1,219 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.Args;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按连接池统计（使用中、等待中、空闲连接数）和获取连接的等待时间定期调整每个路由的最大连接数：
+ * 有请求在等待连接或平均等待时间超过阈值时增加25%；连续3个周期使用率低于一半时减少25%。
+ * 按优先级分配连接时，在{@link PriorityLeaseGate}排队的请求和等待时间也计入。
+ * 连接池总数取各路由最大连接数之和，不低于初始值也不超过上限。
+ * 每个Request需要单独的实例。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class PoolSizeController {
+
+	private static final Logger log = LoggerFactory.getLogger(PoolSizeController.class);
+
+	private static final int IDLE_PERIODS_BEFORE_SHRINK = 3;
+
+	private int minPerRoute = 2;
+
+	private int maxPerRoute = 200;
+
+	private int maxTotal = 1000;
+
+	private long period = 5000;
+
+	private long leaseWaitThreshold = 5;
+
+	private final Map<HttpRoute, Integer> idlePeriods = new HashMap<HttpRoute, Integer>();
+
+	private volatile InstrumentedPool connManager;
+
+	private PriorityLeaseGate leaseGate;
+
+	private int initialMaxTotal;
+
+	private ScheduledFuture<?> future;
+
+	/**
+	 * @param minPerRoute 每个路由最少保留的连接数，默认2
+	 */
+	public PoolSizeController setMinPerRoute(int minPerRoute) {
+		this.minPerRoute = Args.positive(minPerRoute, "minPerRoute");
+		return this;
+	}
+
+	/**
+	 * @param maxPerRoute 每个路由最多的连接数，默认200
+	 */
+	public PoolSizeController setMaxPerRoute(int maxPerRoute) {
+		this.maxPerRoute = Args.positive(maxPerRoute, "maxPerRoute");
+		return this;
+	}
+
+	/**
+	 * @param maxTotal 连接池总连接数的上限，默认1000
+	 */
+	public PoolSizeController setMaxTotal(int maxTotal) {
+		this.maxTotal = Args.positive(maxTotal, "maxTotal");
+		return this;
+	}
+
+	/**
+	 * @param period 调整间隔，单位：毫秒，默认5000
+	 */
+	public PoolSizeController setPeriod(long period) {
+		this.period = Args.positive(period, "period");
+		return this;
+	}
+
+	/**
+	 * @param leaseWaitThreshold 获取连接的平均等待时间超过该值时增加连接数，单位：毫秒，默认5
+	 */
+	public PoolSizeController setLeaseWaitThreshold(long leaseWaitThreshold) {
+		this.leaseWaitThreshold = Args.notNegative(leaseWaitThreshold, "leaseWaitThreshold");
+		return this;
+	}
+
+	/**
+	 * @param connManager
+	 * @param leaseGate 请求在连接池前排队的位置，可为null
+	 */
+	synchronized void start(InstrumentedPool connManager, PriorityLeaseGate leaseGate) {
+
+		Args.check(minPerRoute <= maxPerRoute, "minPerRoute must not be greater than maxPerRoute");
+
+		if (this.connManager != null)
+			throw new IllegalStateException("PoolSizeController is already in use by another Request");
+
+		this.connManager = connManager;
+		this.leaseGate = leaseGate;
+		this.initialMaxTotal = connManager.getMaxTotal();
+		this.future = SharedScheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					resize();
+				} catch (RuntimeException e) {
+					log.warn("Resize connection pool failed", e);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void stop() {
+		if (future != null)
+			future.cancel(false);
+	}
+
+	/**
+	 * @return 各路由当前的最大连接数
+	 */
+	public Map<HttpRoute, Integer> getRouteLimits() {
+
+		Map<HttpRoute, Integer> limits = new HashMap<HttpRoute, Integer>();
+		InstrumentedPool manager = connManager;
+
+		if (manager != null) {
+			for (HttpRoute route : manager.getRoutes()) {
+				limits.put(route, manager.getMaxPerRoute(route));
+			}
+		}
+
+		return limits;
+	}
+
+	synchronized void resize() {
+
+		long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(leaseWaitThreshold);
+		int total = 0;
+
+		for (HttpRoute route : connManager.getRoutes()) {
+
+			PoolStats stats = connManager.getStats(route);
+			InstrumentedConnectionManager.LeaseStats.Sample sample = connManager.drainLeaseStats(route);
+			int pending = stats.getPending();
+
+			if (leaseGate != null) {
+				// 连接不足时请求在PriorityLeaseGate排队，连接池自身的等待数和等待时间为0
+				InstrumentedConnectionManager.LeaseStats.Sample gateSample = leaseGate
+						.drainLeaseStats(route.getTargetHost());
+
+				pending += leaseGate.getWaitingCount(route.getTargetHost());
+				sample = new InstrumentedConnectionManager.LeaseStats.Sample(sample.count + gateSample.count,
+						sample.totalWaitNanos + gateSample.totalWaitNanos,
+						Math.max(sample.maxWaitNanos, gateSample.maxWaitNanos), sample.failures + gateSample.failures);
+			}
+
+			int max = stats.getMax();
+			int step = Math.max(1, max / 4);
+			int newMax = max;
+
+			if (pending > 0 || sample.failures > 0 || sample.getAverageWaitNanos() > thresholdNanos) {
+
+				newMax = Math.max(max, Math.min(maxPerRoute, max + step));
+				idlePeriods.remove(route);
+
+			} else if (stats.getLeased() * 2 < max) {
+
+				Integer idle = idlePeriods.get(route);
+				idle = idle == null ? 1 : idle + 1;
+
+				if (idle >= IDLE_PERIODS_BEFORE_SHRINK) {
+					newMax = Math.min(max, Math.max(Math.max(minPerRoute, stats.getLeased() + 1), max - step));
+					idle = 0;
+				}
+
+				idlePeriods.put(route, idle);
+			} else {
+				idlePeriods.remove(route);
+			}
+
+			if (newMax != max) {
+				connManager.setMaxPerRoute(route, newMax);
+
+				if (log.isDebugEnabled()) {
+					log.debug(String.format("Resize %s from %d to %d, %s, lease wait avg %d ms, max %d ms, timeouts %d",
+							route, max, newMax, stats, TimeUnit.NANOSECONDS.toMillis(sample.getAverageWaitNanos()),
+							TimeUnit.NANOSECONDS.toMillis(sample.maxWaitNanos), sample.failures));
+				}
+			}
+
+			total += newMax;
+		}
+
+		int newTotal = Math.min(maxTotal, Math.max(initialMaxTotal, total));
+
+		if (newTotal != connManager.getMaxTotal())
+			connManager.setMaxTotal(newTotal);
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+/**
+ * 请求优先级，连接不足时高优先级的请求先获得连接
+ *
+ * @author changsoul.wu
+ *
+ * @see PriorityLeaseGate
+ */
+public enum Priority {
+
+	/**
+	 * 交互式、对延迟敏感的请求
+	 */
+	HIGH,
+
+	NORMAL,
+
+	/**
+	 * 后台批量请求
+	 */
+	LOW
+}
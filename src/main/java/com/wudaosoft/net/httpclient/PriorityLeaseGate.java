@@ -0,0 +1,283 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.UnsupportedSchemeException;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.util.Args;
+
+/**
+ * 按优先级分配连接：每个目标主机的并发请求数不超过连接池中该主机的连接数，连接不足时请求按优先级排队，
+ * 连接释放后先分配给等待中优先级最高的请求。
+ * 可以为高优先级预留连接，例如预留10个给HIGH，则NORMAL和LOW最多只能用到总连接数减10。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class PriorityLeaseGate {
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	private final int[] reserved = new int[PRIORITIES.length];
+
+	private final ConcurrentMap<HttpHost, HostQueue> queues = new ConcurrentHashMap<HttpHost, HostQueue>();
+
+	/**
+	 * 为某个优先级预留连接，只有该优先级及更高优先级的请求可以使用
+	 *
+	 * @param priority
+	 * @param connections 预留的连接数
+	 * @return
+	 */
+	public PriorityLeaseGate setReserved(Priority priority, int connections) {
+		Args.notNull(priority, "priority");
+		reserved[priority.ordinal()] = Args.notNegative(connections, "connections");
+		return this;
+	}
+
+	/**
+	 * @param host
+	 * @param capacity 该主机的连接数
+	 * @param priority
+	 * @param timeout 最长等待时间，单位：毫秒，小于等于0表示一直等待
+	 * @return 是否获得许可，获得许可后必须调用{@link #release(HttpHost)}
+	 * @throws InterruptedException
+	 */
+	boolean acquire(HttpHost host, int capacity, Priority priority, long timeout) throws InterruptedException {
+		return getQueue(host).acquire(capacity, priority == null ? Priority.NORMAL : priority, timeout);
+	}
+
+	void release(HttpHost host) {
+		getQueue(host).release();
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机正在等待的请求数
+	 */
+	int getWaitingCount(HttpHost host) {
+
+		HostQueue queue = queues.get(key(host));
+
+		if (queue == null)
+			return 0;
+
+		queue.lock.lock();
+		try {
+			int count = 0;
+
+			for (int waiting : queue.waiting) {
+				count += waiting;
+			}
+
+			return count;
+		} finally {
+			queue.lock.unlock();
+		}
+	}
+
+	/**
+	 * 取出上次调用以来等待许可的时间和超时次数并清零，被中断的等待不计入
+	 */
+	InstrumentedConnectionManager.LeaseStats.Sample drainLeaseStats(HttpHost host) {
+
+		HostQueue queue = queues.get(key(host));
+
+		return queue == null ? new InstrumentedConnectionManager.LeaseStats.Sample(0, 0, 0, 0)
+				: queue.leaseStats.drain();
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机各优先级正在等待的请求数
+	 */
+	public Map<Priority, Integer> getWaiting(HttpHost host) {
+
+		HostQueue queue = getQueue(host);
+		Map<Priority, Integer> waiting = new HashMap<Priority, Integer>();
+
+		queue.lock.lock();
+		try {
+			for (Priority priority : PRIORITIES) {
+				waiting.put(priority, queue.waiting[priority.ordinal()]);
+			}
+		} finally {
+			queue.lock.unlock();
+		}
+
+		return waiting;
+	}
+
+	/**
+	 * @param host
+	 * @return 目标主机正在使用的连接数
+	 */
+	public int getLeased(HttpHost host) {
+
+		HostQueue queue = getQueue(host);
+
+		queue.lock.lock();
+		try {
+			return queue.leased;
+		} finally {
+			queue.lock.unlock();
+		}
+	}
+
+	private HostQueue getQueue(HttpHost host) {
+
+		host = key(host);
+		HostQueue queue = queues.get(host);
+
+		if (queue == null) {
+			queue = new HostQueue();
+			HostQueue existing = queues.putIfAbsent(host, queue);
+			if (existing != null)
+				queue = existing;
+		}
+
+		return queue;
+	}
+
+	/**
+	 * 未指定端口时使用协议的默认端口，与连接池的路由一致
+	 */
+	private static HttpHost key(HttpHost host) {
+
+		if (host.getPort() >= 0)
+			return host;
+
+		try {
+			return new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host),
+					host.getSchemeName());
+		} catch (UnsupportedSchemeException e) {
+			return host;
+		}
+	}
+
+	private class HostQueue {
+
+		final ReentrantLock lock = new ReentrantLock();
+
+		final Condition[] available = new Condition[PRIORITIES.length];
+
+		final int[] waiting = new int[PRIORITIES.length];
+
+		final InstrumentedConnectionManager.LeaseStats leaseStats = new InstrumentedConnectionManager.LeaseStats();
+
+		int leased;
+
+		int capacity;
+
+		HostQueue() {
+			for (int i = 0; i < available.length; i++) {
+				available[i] = lock.newCondition();
+			}
+		}
+
+		boolean acquire(int capacity, Priority priority, long timeout) throws InterruptedException {
+
+			long start = System.nanoTime();
+			boolean leased = lease(capacity, priority, timeout);
+
+			leaseStats.record(System.nanoTime() - start, !leased);
+
+			return leased;
+		}
+
+		private boolean lease(int capacity, Priority priority, long timeout) throws InterruptedException {
+
+			int p = priority.ordinal();
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+			lock.lock();
+			try {
+				this.capacity = capacity;
+				waiting[p]++;
+
+				try {
+					while (!canLease(p)) {
+						if (timeout <= 0) {
+							available[p].await();
+						} else {
+							if (nanos <= 0)
+								return false;
+
+							nanos = available[p].awaitNanos(nanos);
+						}
+					}
+
+					leased++;
+				} finally {
+					waiting[p]--;
+					// 容量变大或自己放弃等待时，后面的请求可能可以获得许可
+					signalNext();
+				}
+
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void release() {
+			lock.lock();
+			try {
+				leased--;
+				signalNext();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * 有更高优先级的请求在等待时不分配；剩余连接数需大于为更高优先级预留的连接数
+		 */
+		private boolean canLease(int p) {
+
+			int reservedAbove = 0;
+
+			for (int i = 0; i < p; i++) {
+				if (waiting[i] > 0)
+					return false;
+
+				reservedAbove += reserved[i];
+			}
+
+			return capacity - leased > reservedAbove;
+		}
+
+		private void signalNext() {
+			for (int i = 0; i < waiting.length; i++) {
+				if (waiting[i] > 0) {
+					if (canLease(i))
+						available[i].signal();
+					return;
+				}
+			}
+		}
+	}
+
+}
@@ -19,7 +19,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.nio.charset.CodingErrorAction;
@@ -29,9 +33,32 @@ import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
 import javax.net.ssl.TrustManager;
@@ -40,19 +67,24 @@ import javax.net.ssl.X509TrustManager;
 import org.apache.http.Consts;
 import org.apache.http.HeaderElement;
 import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
+import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CookieStore;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.Configurable;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
@@ -60,30 +92,44 @@ import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.impl.execchain.RequestAbortedException;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.UnsupportedSchemeException;
 import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.NoopHostnameVerifier;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.client.BasicCookieStore;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.DefaultHttpClientConnectionOperator;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.pool.ConnPoolControl;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.ssl.SSLContexts;
@@ -105,13 +151,25 @@ public class Request {
 
 	private HostConfig hostConfig;
 
+	private ExtendedHostConfig extendedConfig;
+
 	private CloseableHttpClient httpClient;
 
 	private SSLContext sslcontext;
 
 	private Class<? extends CookieStore> defaultCookieStoreClass;
 
-	private PoolingHttpClientConnectionManager connManager;
+	private HttpClientConnectionManager connManager;
+
+	private ConnPoolControl<HttpRoute> poolControl;
+
+	private IdleConnectionEvictor idleConnectionEvictor;
+
+	private Map<HttpRoute, RequestConfig> routeRequestConfigs;
+
+	private List<UpstreamHost> upstreamHosts;
+
+	private Map<String, UpstreamHost> upstreamHostsByUrl;
 
 	private ConnectionKeepAliveStrategy keepAliveStrategy;
 
@@ -125,6 +183,52 @@ public class Request {
 
 	private HttpClientContext defaultHttpContext;
 
+	private SessionContextCache sessionContextCache;
+
+	private int sessionCacheSize = 1024;
+
+	private long sessionIdleTimeout = 30 * 60 * 1000;
+
+	private int prewarmConnections;
+
+	private long prewarmTimeout;
+
+	private long connectStagger;
+
+	private ParallelConnectionOperator parallelConnectionOperator;
+
+	private int poolShards;
+
+	private TlsConfig tlsConfig;
+
+	private TlsConnectionSocketFactory sslConnectionSocketFactory;
+
+	private int prewarmedConnections;
+
+	private ExecutorService asyncExecutor;
+
+	private boolean isOwnAsyncExecutor = false;
+
+	private boolean isVirtualThreads = false;
+
+	private RequestCoalescer requestCoalescer;
+
+	private ExecutorService hedgingExecutor;
+
+	private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+	private CircuitBreaker circuitBreaker;
+
+	private PriorityLeaseGate priorityLeaseGate;
+
+	private LeasePermits leasePermits;
+
+	private PoolSizeController poolSizeController;
+
+	private DnsResolver dnsResolver;
+
+	private final ConcurrentMap<HttpHost, LatencyRecorder> latencyRecorders = new ConcurrentHashMap<HttpHost, LatencyRecorder>();
+
 	private Request() {
 	}
 
@@ -140,6 +244,74 @@ public class Request {
 	 */
 	void setHostConfig(HostConfig hostConfig) {
 		this.hostConfig = hostConfig;
+		this.extendedConfig = extend(hostConfig);
+	}
+
+	/**
+	 * 只实现了HostConfig的配置，扩展配置使用DefaultHostConfig中的默认值
+	 */
+	private static ExtendedHostConfig extend(final HostConfig hostConfig) {
+
+		if (hostConfig == null || hostConfig instanceof ExtendedHostConfig)
+			return (ExtendedHostConfig) hostConfig;
+
+		return new DefaultHostConfig() {
+
+			@Override
+			public String getUserAgent() {
+				return hostConfig.getUserAgent();
+			}
+
+			@Override
+			public String getReferer() {
+				return hostConfig.getReferer();
+			}
+
+			@Override
+			public HttpHost getHost() {
+				return hostConfig.getHost();
+			}
+
+			@Override
+			public String getHostUrl() {
+				return hostConfig.getHostUrl();
+			}
+
+			@Override
+			public Charset getCharset() {
+				return hostConfig.getCharset();
+			}
+
+			@Override
+			public RequestConfig getRequestConfig() {
+				return hostConfig.getRequestConfig();
+			}
+
+			@Override
+			public URL getCA() {
+				return hostConfig.getCA();
+			}
+
+			@Override
+			public char[] getCAPassword() {
+				return hostConfig.getCAPassword();
+			}
+
+			@Override
+			public boolean isMulticlient() {
+				return hostConfig.isMulticlient();
+			}
+
+			@Override
+			public int getPoolSize() {
+				return hostConfig.getPoolSize();
+			}
+
+			@Override
+			public int getHostCount() {
+				return hostConfig.getHostCount();
+			}
+		};
 	}
 
 	/**
@@ -191,6 +363,169 @@ public class Request {
 		this.requestInterceptor = requestInterceptor;
 	}
 
+	/**
+	 * @param asyncExecutor the asyncExecutor to set
+	 */
+	void setAsyncExecutor(ExecutorService asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * @param isVirtualThreads the isVirtualThreads to set
+	 */
+	void setVirtualThreads(boolean isVirtualThreads) {
+		this.isVirtualThreads = isVirtualThreads;
+	}
+
+	/**
+	 * @param requestCoalescer the requestCoalescer to set
+	 */
+	void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
+	}
+
+	/**
+	 * @return 请求合并器，未开启请求合并时返回null
+	 */
+	public RequestCoalescer getRequestCoalescer() {
+		return requestCoalescer;
+	}
+
+	/**
+	 * @param concurrencyLimiter the concurrencyLimiter to set
+	 */
+	void setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+		this.concurrencyLimiter = concurrencyLimiter;
+	}
+
+	/**
+	 * @return 自适应并发限制，未设置时返回null
+	 */
+	public AdaptiveConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	/**
+	 * @param circuitBreaker the circuitBreaker to set
+	 */
+	void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * @return 熔断器，未设置时返回null
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * @param priorityLeaseGate the priorityLeaseGate to set
+	 */
+	void setPriorityLeaseGate(PriorityLeaseGate priorityLeaseGate) {
+		this.priorityLeaseGate = priorityLeaseGate;
+	}
+
+	/**
+	 * @return 按优先级分配连接，未设置且未使用虚拟线程时返回null
+	 */
+	public PriorityLeaseGate getPriorityLeaseGate() {
+		return priorityLeaseGate;
+	}
+
+	/**
+	 * @param poolSizeController the poolSizeController to set
+	 */
+	void setPoolSizeController(PoolSizeController poolSizeController) {
+		this.poolSizeController = poolSizeController;
+	}
+
+	/**
+	 * @return 连接池大小的自动调整，未设置时返回null
+	 */
+	public PoolSizeController getPoolSizeController() {
+		return poolSizeController;
+	}
+
+	/**
+	 * @param dnsResolver the dnsResolver to set
+	 */
+	void setDnsResolver(DnsResolver dnsResolver) {
+		this.dnsResolver = dnsResolver;
+	}
+
+	/**
+	 * @return 建立连接时使用的DNS解析，未设置时返回null（使用JVM默认的解析）
+	 */
+	public DnsResolver getDnsResolver() {
+		return dnsResolver;
+	}
+
+	/**
+	 * @param connectStagger the connectStagger to set
+	 */
+	void setConnectStagger(long connectStagger) {
+		this.connectStagger = connectStagger;
+	}
+
+	/**
+	 * @param tlsConfig the tlsConfig to set
+	 */
+	void setTlsConfig(TlsConfig tlsConfig) {
+		this.tlsConfig = tlsConfig;
+	}
+
+	/**
+	 * @return HTTPS连接使用的socket工厂，可查询TLS完整握手和会话恢复的次数
+	 */
+	public TlsConnectionSocketFactory getSslConnectionSocketFactory() {
+		return sslConnectionSocketFactory;
+	}
+
+	/**
+	 * @param poolShards the poolShards to set
+	 */
+	void setPoolShards(int poolShards) {
+		this.poolShards = poolShards;
+	}
+
+	/**
+	 * @return 并行建立连接的{@link ParallelConnectionOperator}，未开启时返回null
+	 */
+	public ParallelConnectionOperator getParallelConnectionOperator() {
+		return parallelConnectionOperator;
+	}
+
+	/**
+	 * @param sessionCacheSize the sessionCacheSize to set
+	 */
+	void setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = sessionCacheSize;
+	}
+
+	/**
+	 * @param sessionIdleTimeout the sessionIdleTimeout to set
+	 */
+	void setSessionIdleTimeout(long sessionIdleTimeout) {
+		this.sessionIdleTimeout = sessionIdleTimeout;
+	}
+
+	/**
+	 * @param prewarmConnections the prewarmConnections to set
+	 * @param prewarmTimeout the prewarmTimeout to set
+	 */
+	void setPrewarm(int prewarmConnections, long prewarmTimeout) {
+		this.prewarmConnections = prewarmConnections;
+		this.prewarmTimeout = prewarmTimeout;
+	}
+
+	/**
+	 * @return 初始化时预先建立的连接数
+	 */
+	public int getPrewarmedConnections() {
+		return prewarmedConnections;
+	}
+
 	
 	/**
 	 * @return
@@ -249,21 +584,362 @@ public class Request {
 	 * @return
 	 * @throws Exception
 	 */
-	public <T> T doRequest(WorkerBuilder workerBuilder, ResponseHandler<T> responseHandler) throws Exception {
-		
-		String method = workerBuilder.getMethod();
-		String url = workerBuilder.getUrl();
+	public <T> T doRequest(final WorkerBuilder workerBuilder, final ResponseHandler<T> responseHandler) throws Exception {
 
 		Args.notNull(workerBuilder, "WorkerBuilder");
-		Args.notEmpty(method, "WorkerBuilder.getMethod()");
-		Args.notEmpty(url, "WorkerBuilder.getUrl()");
+		Args.notEmpty(workerBuilder.getMethod(), "WorkerBuilder.getMethod()");
+		Args.notEmpty(workerBuilder.getUrl(), "WorkerBuilder.getUrl()");
 		Args.notNull(responseHandler, "responseHandler");
-		
+
+		long deadline = getDeadline(workerBuilder);
+		final long deadlineAt = deadline > 0 ? System.currentTimeMillis() + deadline : 0;
+
+		if (requestCoalescer != null && isCoalescible(workerBuilder, responseHandler)) {
+
+			// 等待其他请求的结果也不超过自己的截止时间
+			return requestCoalescer.execute(buildCoalescingKey(workerBuilder, responseHandler), deadlineAt,
+					new Callable<T>() {
+
+						@Override
+						public T call() throws Exception {
+							return execute(workerBuilder, responseHandler, deadlineAt);
+						}
+					});
+		}
+
+		return execute(workerBuilder, responseHandler, deadlineAt);
+	}
+
+	private long getDeadline(WorkerBuilder workerBuilder) {
+		return workerBuilder.getDeadline() > -1 ? workerBuilder.getDeadline() : extendedConfig.getDeadline();
+	}
+
+	private <T> T execute(WorkerBuilder workerBuilder, ResponseHandler<T> responseHandler, long deadlineAt)
+			throws Exception {
+
+		if (workerBuilder.getHedgingMaxExtra() > 0 && isHedgeable(workerBuilder, responseHandler)) {
+			return executeHedged(workerBuilder, responseHandler, deadlineAt);
+		}
+
+		HttpUriRequest httpRequest = buildHttpRequest(workerBuilder, responseHandler);
+
+		return execute(httpRequest, responseHandler, getHttpContext(workerBuilder), workerBuilder.getPriority(),
+				deadlineAt);
+	}
+
+	/**
+	 * @param deadlineAt 请求的截止时间点（毫秒时间戳），0表示不限制
+	 */
+	private <T> T execute(HttpUriRequest httpRequest, ResponseHandler<T> responseHandler, HttpClientContext context,
+			Priority priority, long deadlineAt) throws IOException {
+
+		if (deadlineAt > 0 && deadlineAt <= System.currentTimeMillis()) {
+			throw new SocketTimeoutException("Deadline exceeded before sending " + httpRequest.getURI());
+		}
+
+		HttpHost target = URIUtils.extractHost(httpRequest.getURI());
+
+		CircuitBreaker.Phase circuitPermit = null;
+
+		if (circuitBreaker != null && (circuitPermit = circuitBreaker.tryAcquire(target)) == null) {
+			throw new RequestRejectedException("Circuit breaker is open for " + target);
+		}
+
+		boolean admitted = false;
+
+		try {
+			if (!acquireRateLimit(httpRequest, deadlineAt)) {
+				throw new RequestRejectedException("Rate limit exceeded for " + httpRequest.getURI());
+			}
+
+			if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire(target)) {
+				throw new RequestRejectedException("Concurrency limit of " + concurrencyLimiter.getLimit(target)
+						+ " exceeded for " + target);
+			}
+
+			admitted = true;
+		} finally {
+			// 被限流拒绝或等待令牌时被中断，归还熔断器的探测名额
+			if (!admitted && circuitPermit != null)
+				circuitBreaker.onIgnored(target, circuitPermit);
+		}
+
+		StatusRecordingResponseHandler<T> handler = new StatusRecordingResponseHandler<T>(responseHandler);
+		UpstreamHost upstream = getUpstreamHost(httpRequest.getURI());
+		long start = System.currentTimeMillis();
+		DeadlineTask deadlineTask = null;
+		boolean leased = false;
+		T result;
+		long latency;
+
+		if (upstream != null)
+			upstream.onStart();
+
+		try {
+			if (deadlineAt > 0) {
+				deadlineTask = new DeadlineTask(httpRequest, responseHandler);
+				deadlineTask.schedule(deadlineAt - start);
+			}
+
+			if (priorityLeaseGate != null) {
+				acquireLease(httpRequest, target, priority, deadlineAt);
+				leased = true;
+			}
+
+			result = getHttpClient().execute(httpRequest, handler, context);
+			latency = System.currentTimeMillis() - start;
+
+			// 在release之前调用，刚完成的请求仍计入正在执行的请求数
+			if (concurrencyLimiter != null)
+				concurrencyLimiter.onSuccess(target, latency);
+		} catch (IOException e) {
+			IOException error = e;
+
+			if (deadlineTask != null && deadlineTask.isExpired()) {
+				error = new SocketTimeoutException("Deadline exceeded for " + httpRequest.getURI());
+				error.initCause(e);
+			}
+
+			onFailure(target, upstream, circuitPermit, handler.getStatusCode(), error,
+					System.currentTimeMillis() - start);
+			throw error;
+		} catch (RuntimeException e) {
+			onFailure(target, upstream, circuitPermit, handler.getStatusCode(), e, System.currentTimeMillis() - start);
+			throw e;
+		} finally {
+			if (deadlineTask != null)
+				deadlineTask.cancel();
+
+			if (leased)
+				releaseLease(target);
+
+			if (concurrencyLimiter != null)
+				concurrencyLimiter.release(target);
+		}
+
+		getLatencyRecorder(target).record(latency);
+
+		if (upstream != null)
+			upstream.onComplete(latency, false);
+
+		if (circuitBreaker != null)
+			circuitBreaker.onSuccess(target, circuitPermit, latency);
+
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Send data to path:[%s]\"%s\". result: %s", httpRequest.getMethod(),
+					httpRequest.getURI(), result));
+		}
+
+		return result;
+	}
+
+	/**
+	 * 对冲请求：首个请求在延迟时间内未返回时再发出相同的请求，最多额外发出maxExtra个，
+	 * 以最先成功的结果为准，其余请求被中止并释放连接。
+	 */
+	private <T> T executeHedged(WorkerBuilder workerBuilder, final ResponseHandler<T> responseHandler,
+			final long deadlineAt) throws Exception {
+
+		final HttpClientContext context = getHttpContext(workerBuilder);
+		final Priority priority = workerBuilder.getPriority();
+
+		HttpUriRequest first = buildHttpRequest(workerBuilder, responseHandler);
+
+		long delay = workerBuilder.getHedgingDelay();
+
+		if (delay < 0) {
+			delay = getLatencyRecorder(URIUtils.extractHost(first.getURI())).p95();
+
+			if (delay < 0) {
+				// 还没有足够的耗时样本，不对冲
+				return execute(first, responseHandler, context, priority, deadlineAt);
+			}
+		}
+
+		int maxAttempts = 1 + workerBuilder.getHedgingMaxExtra();
+		List<HttpUriRequest> attempts = new ArrayList<HttpUriRequest>(maxAttempts);
+		CompletionService<T> completionService = new ExecutorCompletionService<T>(hedgingExecutor);
+		Exception lastError = null;
+		int running = 0;
+
+		try {
+			HttpUriRequest next = first;
+
+			while (true) {
+
+				if (next != null) {
+					final HttpUriRequest httpRequest = next;
+					attempts.add(httpRequest);
+					completionService.submit(new Callable<T>() {
+
+						@Override
+						public T call() throws Exception {
+							return execute(httpRequest, responseHandler, context, priority, deadlineAt);
+						}
+					});
+					running++;
+					next = null;
+				}
+
+				boolean canHedge = attempts.size() < maxAttempts;
+
+				Future<T> done = canHedge ? completionService.poll(delay, TimeUnit.MILLISECONDS)
+						: completionService.take();
+
+				if (done == null) {
+					next = buildHttpRequest(workerBuilder, responseHandler);
+					continue;
+				}
+
+				running--;
+
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					lastError = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+
+				if (canHedge) {
+					next = buildHttpRequest(workerBuilder, responseHandler);
+				} else if (running == 0) {
+					throw lastError;
+				}
+			}
+		} finally {
+			for (HttpUriRequest httpRequest : attempts) {
+				httpRequest.abort();
+			}
+		}
+	}
+
+	private boolean acquireRateLimit(HttpUriRequest httpRequest, long deadlineAt) throws InterruptedIOException {
+
+		HostRateLimiter rateLimiter = extendedConfig.getRateLimiter();
+
+		if (rateLimiter == null)
+			return true;
+
+		long timeout = rateLimiter.getTimeout();
+
+		if (deadlineAt > 0) {
+			// 等待令牌的时间也计入截止时间
+			long remaining = Math.max(0, deadlineAt - System.currentTimeMillis());
+			timeout = timeout < 0 ? remaining : Math.min(timeout, remaining);
+		}
+
+		try {
+			return rateLimiter.acquire(httpRequest.getURI().getPath(), timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for rate limit");
+		}
+	}
+
+	/**
+	 * 按优先级等待连接池中该主机的空闲连接，最长等待connectionRequestTimeout，且不超过截止时间
+	 */
+	private void acquireLease(HttpUriRequest httpRequest, HttpHost target, Priority priority, long deadlineAt)
+			throws IOException {
+
+		RequestConfig config = httpRequest instanceof Configurable ? ((Configurable) httpRequest).getConfig() : null;
+
+		if (config == null)
+			config = hostConfig.getRequestConfig();
+
+		long timeout = config != null ? config.getConnectionRequestTimeout() : -1;
+
+		if (deadlineAt > 0) {
+			long remaining = Math.max(1, deadlineAt - System.currentTimeMillis());
+			timeout = timeout <= 0 ? remaining : Math.min(timeout, remaining);
+		}
+
+		int capacity = poolControl.getMaxPerRoute(getRoute(target));
+		long start = System.currentTimeMillis();
+
+		try {
+			if (!priorityLeaseGate.acquire(target, capacity, priority, timeout)) {
+				throw new ConnectionPoolTimeoutException("Timeout waiting for " + priority + " priority connection");
+			}
+
+			if (leasePermits != null) {
+				boolean permitted = false;
+
+				try {
+					long remaining = timeout <= 0 ? 0 : Math.max(1, timeout - (System.currentTimeMillis() - start));
+					permitted = leasePermits.acquire(poolControl.getMaxTotal(), remaining);
+				} finally {
+					if (!permitted)
+						priorityLeaseGate.release(target);
+				}
+
+				if (!permitted)
+					throw new ConnectionPoolTimeoutException("Timeout waiting for connection");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for connection");
+		}
+	}
+
+	private void releaseLease(HttpHost target) {
+
+		if (leasePermits != null)
+			leasePermits.release();
+
+		priorityLeaseGate.release(target);
+	}
+
+	private void onFailure(HttpHost target, UpstreamHost upstream, CircuitBreaker.Phase circuitPermit,
+			int statusCode, Exception e, long latency) {
+
+		if (upstream != null)
+			upstream.onComplete(latency, isServerFailure(statusCode, e));
+
+		if (isServerFailure(statusCode, e)) {
+
+			if (concurrencyLimiter != null)
+				concurrencyLimiter.onDropped(target);
+
+			if (circuitBreaker != null)
+				circuitBreaker.onFailure(target, circuitPermit);
+
+		} else if (circuitBreaker != null) {
+
+			if (statusCode > 0) {
+				// 服务端正常响应（如4xx），对熔断器而言是一次成功的调用
+				circuitBreaker.onSuccess(target, circuitPermit, latency);
+			} else {
+				circuitBreaker.onIgnored(target, circuitPermit);
+			}
+		}
+	}
+
+	/**
+	 * 连接错误、超时及5xx响应视为服务端故障；4xx响应、请求被中止（如对冲请求中落后的请求）不算。
+	 */
+	private static boolean isServerFailure(int statusCode, Exception e) {
+
+		if (statusCode > 0)
+			return statusCode >= 500;
+
+		return e instanceof IOException && !(e instanceof RequestAbortedException);
+	}
+
+	private HttpUriRequest buildHttpRequest(WorkerBuilder workerBuilder, ResponseHandler<?> responseHandler) {
+
+		String method = workerBuilder.getMethod();
+		String url = workerBuilder.getUrl();
+
 //		if(!workerBuilder.isAnyHost()) {
 		if(!isFullUrl(url)) {
 //			notFullUrl(url);
-			Args.notEmpty(hostConfig.getHostUrl(), "HostConfig.getHostUrl()");
-			url = hostConfig.getHostUrl() + url;
+			if (!upstreamHosts.isEmpty()) {
+				url = HostSelectionStrategies.selectAvailable(extendedConfig.getHostSelectionStrategy(), upstreamHosts,
+						circuitBreaker).getHostUrl() + url;
+			} else {
+				Args.notEmpty(hostConfig.getHostUrl(), "HostConfig.getHostUrl()");
+				url = hostConfig.getHostUrl() + url;
+			}
 		}
 		
 		Charset charset = hostConfig.getCharset() == null ? Consts.UTF_8 : hostConfig.getCharset();
@@ -281,7 +957,8 @@ public class Request {
 			contentType = MediaType.APPLICATION_XML_VALUE;
 		} else if (responseHandler instanceof FileResponseHandler
 				|| responseHandler instanceof ImageResponseHandler 
-				|| responseHandler instanceof OutputStreamResponseHandler) {
+				|| responseHandler instanceof OutputStreamResponseHandler
+				|| responseHandler instanceof ResponseBodyPublisher.BodyHandler) {
 			contentType = MediaType.ALL_VALUE;
 		} else if (responseHandler instanceof NoResultResponseHandler){
 			contentType = ((NoResultResponseHandler)responseHandler).getContentType().getMimeType();
@@ -328,10 +1005,14 @@ public class Request {
 			buildParameters(requestBuilder, params);
 		}
 		
+		RequestConfig routeRequestConfig = getRouteRequestConfig(requestBuilder.getUri());
+
 		if (workerBuilder.getReadTimeout() > -1) {
 			
-			requestBuilder.setConfig(RequestConfig.copy(this.hostConfig.getRequestConfig())
+			requestBuilder.setConfig(RequestConfig.copy(routeRequestConfig != null ? routeRequestConfig : this.hostConfig.getRequestConfig())
 					.setSocketTimeout(workerBuilder.getReadTimeout()).build());
+		} else if (routeRequestConfig != null) {
+			requestBuilder.setConfig(routeRequestConfig);
 		}
 
 		HttpUriRequest httpRequest = ParameterRequestBuilder.build(requestBuilder);
@@ -341,17 +1022,235 @@ public class Request {
 		if (workerBuilder.isAjax())
 			setAjaxHeader(httpRequest);
 
-		HttpClientContext context= workerBuilder.getContext();
-		if (context == null)
-			context = defaultHttpContext;
+		return httpRequest;
+	}
+
+	private LatencyRecorder getLatencyRecorder(HttpHost host) {
 
-		T result = getHttpClient().execute(httpRequest, responseHandler, context);
+		LatencyRecorder recorder = latencyRecorders.get(host);
 
-		if (log.isDebugEnabled()) {
-			log.debug(String.format("Send data to path:[%s]\"%s\". result: %s", method, url, result));
+		if (recorder == null) {
+			recorder = new LatencyRecorder(256);
+			LatencyRecorder existing = latencyRecorders.putIfAbsent(host, recorder);
+			if (existing != null)
+				recorder = existing;
 		}
 
-		return result;
+		return recorder;
+	}
+
+	/**
+	 * 异步执行请求，立即返回Future，请求在异步线程池中执行。
+	 * 请求本身仍是阻塞I/O，每个执行中的请求占用异步线程池中的一个线程。
+	 * 
+	 * @param workerBuilder
+	 * @param responseHandler
+	 * @param callback 请求完成、失败或取消时回调，可为null
+	 * @return
+	 */
+	public <T> Future<T> doRequestAsync(final WorkerBuilder workerBuilder, final ResponseHandler<T> responseHandler,
+			final FutureCallback<T> callback) {
+
+		Args.notNull(workerBuilder, "WorkerBuilder");
+		Args.notNull(responseHandler, "responseHandler");
+
+		return submit(new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				return doRequest(workerBuilder, responseHandler);
+			}
+		}, callback);
+	}
+
+	/**
+	 * 批量执行请求，并发数为目标主机的连接池大小。
+	 * 
+	 * @see #executeAll(List, ResponseHandler, int)
+	 */
+	public <T> List<Future<T>> executeAll(List<WorkerBuilder> workerBuilders, ResponseHandler<T> responseHandler)
+			throws InterruptedException {
+
+		int maxParallel = 0;
+
+		for (HttpHost host : getConfiguredHosts()) {
+			maxParallel += poolControl.getMaxPerRoute(getRoute(host));
+		}
+
+		if (maxParallel == 0)
+			maxParallel = poolControl.getDefaultMaxPerRoute();
+
+		return executeAll(workerBuilders, responseHandler, maxParallel);
+	}
+
+	/**
+	 * 批量执行请求，同时执行的请求数不超过maxParallel，全部完成后返回。
+	 * 返回结果与workerBuilders顺序一致，单个请求的异常通过对应Future.get()抛出的ExecutionException获取。
+	 * 
+	 * @param workerBuilders
+	 * @param responseHandler 所有请求共用，必须是线程安全的
+	 * @param maxParallel 最大并发数
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public <T> List<Future<T>> executeAll(List<WorkerBuilder> workerBuilders, ResponseHandler<T> responseHandler,
+			int maxParallel) throws InterruptedException {
+
+		Args.notNull(workerBuilders, "workerBuilders");
+		Args.notNull(responseHandler, "responseHandler");
+		Args.positive(maxParallel, "maxParallel");
+
+		final Semaphore permits = new Semaphore(maxParallel);
+
+		FutureCallback<T> releaseCallback = new FutureCallback<T>() {
+
+			@Override
+			public void completed(T result) {
+				permits.release();
+			}
+
+			@Override
+			public void failed(Exception ex) {
+				permits.release();
+			}
+
+			@Override
+			public void cancelled() {
+				permits.release();
+			}
+		};
+
+		List<Future<T>> futures = new ArrayList<Future<T>>(workerBuilders.size());
+
+		try {
+			for (WorkerBuilder workerBuilder : workerBuilders) {
+				permits.acquire();
+				futures.add(doRequestAsync(workerBuilder, responseHandler, releaseCallback));
+			}
+
+			for (Future<T> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException ignore) {
+				} catch (CancellationException ignore) {
+				}
+			}
+		} catch (InterruptedException e) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+
+		return futures;
+	}
+
+	/**
+	 * @param task
+	 * @param callback
+	 * @return
+	 */
+	<T> Future<T> submit(final Callable<T> task, final FutureCallback<T> callback) {
+
+		final BasicFuture<T> future = new BasicFuture<T>(callback);
+
+		asyncExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if (future.isDone())
+					return;
+
+				try {
+					future.completed(task.call());
+				} catch (Exception e) {
+					future.failed(e);
+				}
+			}
+		});
+
+		return future;
+	}
+
+	/**
+	 * 只对冲幂等且可重复发送的请求：流式请求体只能读取一次，写文件、输出流的处理器不能并发执行。
+	 */
+	private boolean isHedgeable(WorkerBuilder workerBuilder, ResponseHandler<?> responseHandler) {
+
+		String method = workerBuilder.getMethod();
+
+		if (!HttpGet.METHOD_NAME.equals(method) && !HttpHead.METHOD_NAME.equals(method)
+				&& !HttpOptions.METHOD_NAME.equals(method) && !HttpPut.METHOD_NAME.equals(method)
+				&& !HttpDelete.METHOD_NAME.equals(method))
+			return false;
+
+		if (workerBuilder.getStreamBody() != null)
+			return false;
+
+		return !(responseHandler instanceof FileResponseHandler || responseHandler instanceof OutputStreamResponseHandler
+				|| responseHandler instanceof ResponseBodyPublisher.BodyHandler);
+	}
+
+	/**
+	 * 只合并无请求体的GET/HEAD请求，且结果可以被多个调用者共享（不合并写文件、输出流等有副作用的处理器）。
+	 */
+	private boolean isCoalescible(WorkerBuilder workerBuilder, ResponseHandler<?> responseHandler) {
+
+		if (!HttpGet.METHOD_NAME.equals(workerBuilder.getMethod())
+				&& !HttpHead.METHOD_NAME.equals(workerBuilder.getMethod()))
+			return false;
+
+		if (workerBuilder.getContext() != null || workerBuilder.getStringBody() != null
+				|| workerBuilder.getFileBody() != null || workerBuilder.getStreamBody() != null)
+			return false;
+
+		return responseHandler instanceof JsonResponseHandler || responseHandler instanceof StringResponseHandler
+				|| responseHandler instanceof XmlResponseHandler || responseHandler instanceof NoResultResponseHandler;
+	}
+
+	private String buildCoalescingKey(WorkerBuilder workerBuilder, ResponseHandler<?> responseHandler) {
+
+		StringBuilder key = new StringBuilder(128);
+		key.append(responseHandler.getClass().getName()).append(' ');
+		key.append(workerBuilder.getMethod()).append(' ').append(workerBuilder.getUrl());
+
+		if (responseHandler instanceof NoResultResponseHandler) {
+			key.append(' ').append(((NoResultResponseHandler) responseHandler).getContentType().getMimeType());
+		}
+
+		if (workerBuilder.isAjax()) {
+			key.append(" ajax");
+		}
+
+		if (workerBuilder.getSessionId() != null) {
+			key.append(" session=").append(workerBuilder.getSessionId());
+		}
+
+		// 超时设置不同的请求可能得到不同的结果，不合并
+		if (workerBuilder.getReadTimeout() > -1) {
+			key.append(" readTimeout=").append(workerBuilder.getReadTimeout());
+		}
+
+		long deadline = getDeadline(workerBuilder);
+
+		if (deadline > 0) {
+			key.append(" deadline=").append(deadline);
+		}
+
+		Map<String, String> params = workerBuilder.getParameters();
+
+		if (params != null && !params.isEmpty()) {
+			Map<String, String> sorted = new TreeMap<String, String>();
+
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				if (entry.getKey() != null)
+					sorted.put(entry.getKey(), entry.getValue() == null ? "" : entry.getValue());
+			}
+
+			key.append(' ').append(sorted);
+		}
+
+		return key.toString();
 	}
 
 	public void setAjaxHeader(HttpRequest resquest) {
@@ -432,21 +1331,99 @@ public class Request {
 	 * @param params
 	 * @return
 	 */
-	public void buildParameters(RequestBuilder requestBuilder, Map<String, String> params) {
+	public void buildParameters(RequestBuilder requestBuilder, Map<String, String> params) {
+
+		if (params != null) {
+			for (Map.Entry<String, String> entry : params.entrySet()) {
+				if(entry.getKey() == null)
+					continue;
+				
+				String value = entry.getValue();
+
+				if (value == null)
+					value = "";
+				
+				requestBuilder.addParameter(entry.getKey(), value);
+			}
+		}
+	}
+
+	/**
+	 * @return 目标主机单独设置的请求配置，没有时返回null
+	 */
+	private RequestConfig getRouteRequestConfig(URI uri) {
+
+		if (routeRequestConfigs.isEmpty())
+			return null;
+
+		HttpHost host = URIUtils.extractHost(uri);
+
+		return host != null ? routeRequestConfigs.get(getRoute(host)) : null;
+	}
+
+	/**
+	 * @return HostConfig的主机，负载均衡时为所有上游实例的主机
+	 */
+	private List<HttpHost> getConfiguredHosts() {
+
+		List<HttpHost> hosts = new ArrayList<HttpHost>();
+
+		if (!upstreamHosts.isEmpty()) {
+			// 同一主机的多个上游实例（不同的路径）共用一个路由
+			Set<HttpRoute> routes = new HashSet<HttpRoute>();
+
+			for (UpstreamHost upstream : upstreamHosts) {
+				if (routes.add(getRoute(upstream.getHost())))
+					hosts.add(upstream.getHost());
+			}
+		} else if (hostConfig.getHost() != null) {
+			hosts.add(hostConfig.getHost());
+		}
+
+		return hosts;
+	}
+
+	/**
+	 * 按请求地址找到上游实例：hostUrl是请求地址前缀的实例中hostUrl最长的一个，
+	 * 同一主机不同路径的实例不会混淆
+	 */
+	private UpstreamHost getUpstreamHost(URI uri) {
+
+		if (upstreamHostsByUrl.isEmpty())
+			return null;
+
+		String url = uri.toString();
+		UpstreamHost result = null;
+
+		for (Map.Entry<String, UpstreamHost> entry : upstreamHostsByUrl.entrySet()) {
+			String hostUrl = entry.getKey();
+
+			if (url.startsWith(hostUrl) && (result == null || hostUrl.length() > result.getHostUrl().length()))
+				result = entry.getValue();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return 负载均衡的上游实例，不做负载均衡时为空
+	 */
+	public List<UpstreamHost> getUpstreamHosts() {
+		return Collections.unmodifiableList(upstreamHosts);
+	}
 
-		if (params != null) {
-			for (Map.Entry<String, String> entry : params.entrySet()) {
-				if(entry.getKey() == null)
-					continue;
-				
-				String value = entry.getValue();
+	private HttpRoute getRoute(HttpHost host) {
 
-				if (value == null)
-					value = "";
-				
-				requestBuilder.addParameter(entry.getKey(), value);
+		if (host.getPort() < 0) {
+			// 与连接池的路由一致，使用协议的默认端口
+			try {
+				host = new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host),
+						host.getSchemeName());
+			} catch (UnsupportedSchemeException ignore) {
 			}
 		}
+
+		return new HttpRoute(host, null, !HttpHost.DEFAULT_SCHEME_NAME.equals(host.getSchemeName()));
 	}
 
 	private boolean isFullUrl(final String suffixUrl) {
@@ -461,12 +1438,60 @@ public class Request {
 	 * @return
 	 */
 	public CloseableHttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * 多客户端模式下移除会话，该会话的Cookie随之丢弃。
+	 * 
+	 * @param sessionId
+	 */
+	public void removeSession(String sessionId) {
+		if (sessionContextCache != null)
+			sessionContextCache.remove(sessionId);
+	}
+
+	/**
+	 * 多客户端模式下所有请求共用同一个HttpClient，按会话ID隔离Cookie；
+	 * 未指定会话ID的请求每次使用新的CookieStore。
+	 */
+	private HttpClientContext getHttpContext(WorkerBuilder workerBuilder) {
+
+		HttpClientContext context = workerBuilder.getContext();
 
 		if (!hostConfig.isMulticlient()) {
-			return httpClient;
+			return context != null ? context : defaultHttpContext;
+		}
+
+		if (context != null) {
+			if (context.getCookieStore() == null)
+				context.setCookieStore(createCookieStore());
+			return context;
+		}
+
+		if (workerBuilder.getSessionId() != null) {
+			return sessionContextCache.get(workerBuilder.getSessionId());
+		}
+
+		return createSessionContext();
+	}
+
+	private HttpClientContext createSessionContext() {
+		HttpClientContext context = HttpClientContext.create();
+		context.setCookieStore(createCookieStore());
+		return context;
+	}
+
+	private CookieStore createCookieStore() {
+
+		try {
+			if (defaultCookieStoreClass != null)
+				return defaultCookieStoreClass.newInstance();
+		} catch (InstantiationException e) {
+		} catch (IllegalAccessException e) {
 		}
 
-		return create();
+		return new BasicCookieStore();
 	}
 
 	protected void init() throws KeyManagementException, NoSuchAlgorithmException, KeyStoreException,
@@ -474,23 +1499,31 @@ public class Request {
 
 		Args.notNull(hostConfig, "Host config");
 
-		SSLConnectionSocketFactory sslConnectionSocketFactory = null;
+		TlsConfig tls = tlsConfig != null ? tlsConfig : new TlsConfig();
+		SSLContext tlsContext = sslcontext;
+		HostnameVerifier hostnameVerifier = SSLConnectionSocketFactory.getDefaultHostnameVerifier();
 
-		if (sslcontext == null) {
+		// 调用方传入的SSLContext不修改其会话缓存设置；按证书缓存的SSLContext由SSLContextBuilder按设置区分
+		if (tlsContext == null) {
 
 			if (hostConfig.getCA() != null) {
 				// Trust root CA and all self-signed certs
-				SSLContext sslcontext1 = SSLContexts.custom().loadTrustMaterial(hostConfig.getCA(),
-						hostConfig.getCAPassword(), TrustSelfSignedStrategy.INSTANCE).build();
+				char[] caPassword = hostConfig.getCAPassword();
+				SSLContextBuilder contextBuilder = new SSLContextBuilder().setCert(hostConfig.getCA())
+						.setPassword(caPassword != null ? new String(caPassword) : null);
 
-				// Allow TLSv1 protocol only
-				sslConnectionSocketFactory = new SSLConnectionSocketFactory(sslcontext1, new String[] { "TLSv1" }, null,
-						SSLConnectionSocketFactory.getDefaultHostnameVerifier());
+				if (tls.getSessionCacheSize() >= 0)
+					contextBuilder.setSessionCacheSize(tls.getSessionCacheSize());
+
+				if (tls.getSessionTimeout() >= 0)
+					contextBuilder.setSessionTimeout(tls.getSessionTimeout());
+
+				tlsContext = contextBuilder.buildTrustMaterial();
 			} else {
 				
 				if (isTrustAll) {
 					
-					SSLContext sslcontext1 = SSLContext.getInstance("TLS");
+					tlsContext = SSLContext.getInstance("TLS");
 
 					TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
 						public X509Certificate[] getAcceptedIssuers() {
@@ -510,19 +1543,21 @@ public class Request {
 
 					} };
 
-					sslcontext1.init(null, trustAllCerts, null);
+					tlsContext.init(null, trustAllCerts, null);
+					tls.applyTo(tlsContext);
 
-					sslConnectionSocketFactory = new SSLConnectionSocketFactory(sslcontext1, NoopHostnameVerifier.INSTANCE);
+					hostnameVerifier = NoopHostnameVerifier.INSTANCE;
 				} else {
-					sslConnectionSocketFactory = SSLConnectionSocketFactory.getSocketFactory();
+					tlsContext = SSLContexts.createDefault();
+					tls.applyTo(tlsContext);
 				}
 			}
-		} else {
-
-			sslConnectionSocketFactory = new SSLConnectionSocketFactory(sslcontext, new String[] { "TLSv1" }, null,
-					SSLConnectionSocketFactory.getDefaultHostnameVerifier());
 		}
 
+		// 未指定协议版本时使用JVM开启的版本（TLSv1.2、TLSv1.3）
+		sslConnectionSocketFactory = new TlsConnectionSocketFactory(tlsContext, tls.getProtocols(),
+				tls.getCipherSuites(), hostnameVerifier);
+
 		if (keepAliveStrategy == null) {
 			keepAliveStrategy = new ConnectionKeepAliveStrategy() {
 
@@ -595,68 +1630,289 @@ public class Request {
 			};
 		}
 
-		connManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+		Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
 				.register("http", PlainConnectionSocketFactory.getSocketFactory())
-				.register("https", sslConnectionSocketFactory).build());
+				.register("https", sslConnectionSocketFactory).build();
 
-		
+		HttpClientConnectionOperator connectionOperator;
 
-		if (hostConfig.getHost() != null) {
-			
-			connManager.setMaxTotal(hostConfig.getPoolSize() + 60);
-			
-			connManager.setMaxPerRoute(
-					new HttpRoute(hostConfig.getHost(), null,
-							!HttpHost.DEFAULT_SCHEME_NAME.equals(hostConfig.getHost().getSchemeName())),
-					hostConfig.getPoolSize());
-			
-			connManager.setDefaultMaxPerRoute(20);
+		if (connectStagger > 0) {
+			parallelConnectionOperator = new ParallelConnectionOperator(socketFactoryRegistry, dnsResolver, connectStagger);
+			connectionOperator = parallelConnectionOperator;
 		} else {
-			connManager.setMaxTotal(hostConfig.getPoolSize());
-			int hostCount = hostConfig.getHostCount() == 0 ? 10 : hostConfig.getHostCount();
-			connManager.setDefaultMaxPerRoute(hostConfig.getPoolSize() / hostCount);
+			connectionOperator = new DefaultHttpClientConnectionOperator(socketFactoryRegistry, null, dnsResolver);
 		}
-		
+
+		if (extendedConfig.getUnixSocketPath() != null) {
+			if (!UnixDomainSocketFactory.isSupported())
+				throw new IllegalStateException("Unix domain sockets require Java 16 or later");
+
+			connectionOperator = new UnixSocketConnectionOperator(connectionOperator, socketFactoryRegistry,
+					hostConfig.getHost(), new UnixDomainSocketFactory(extendedConfig.getUnixSocketPath()));
+		}
+
+		connectionOperator = sslConnectionSocketFactory.track(connectionOperator);
+
 		// connManager.setValidateAfterInactivity(2000);
 
 		// Create socket configuration
 		SocketConfig socketConfig = SocketConfig.custom().setTcpNoDelay(true).setSoKeepAlive(isKeepAlive).build();
-		connManager.setDefaultSocketConfig(socketConfig);
 
 		// Create connection configuration
 		ConnectionConfig connectionConfig = ConnectionConfig.custom().setMalformedInputAction(CodingErrorAction.IGNORE)
 				.setUnmappableInputAction(CodingErrorAction.IGNORE).setCharset(hostConfig.getCharset() == null ? Consts.UTF_8 : hostConfig.getCharset()).build();
-		connManager.setDefaultConnectionConfig(connectionConfig);
 
-		new IdleConnectionMonitorThread(connManager).start();
+		if (poolShards > 1) {
+			List<PoolingHttpClientConnectionManager> shards = new ArrayList<PoolingHttpClientConnectionManager>();
+
+			// 等待时间由ShardedConnectionManager统计，分片不需要单独统计
+			for (int i = 0; i < poolShards; i++) {
+				shards.add(createConnectionManager(connectionOperator, socketConfig, connectionConfig, false));
+			}
+
+			ShardedConnectionManager shardedConnManager = new ShardedConnectionManager(shards);
+			connManager = shardedConnManager;
+			poolControl = shardedConnManager;
+		} else {
+			PoolingHttpClientConnectionManager poolingConnManager = createConnectionManager(connectionOperator,
+					socketConfig, connectionConfig, poolSizeController != null);
+			connManager = poolingConnManager;
+			poolControl = poolingConnManager;
+		}
+
+		upstreamHosts = new ArrayList<UpstreamHost>();
+		upstreamHostsByUrl = new HashMap<String, UpstreamHost>();
+
+		for (String hostUrl : extendedConfig.getHostUrls()) {
+			UpstreamHost upstream = new UpstreamHost(hostUrl, URIUtils.extractHost(URI.create(hostUrl)));
+			upstreamHosts.add(upstream);
+			upstreamHostsByUrl.put(hostUrl, upstream);
+		}
+
+		if (hostConfig.getHost() != null) {
+			
+			List<HttpHost> hosts = getConfiguredHosts();
+			
+			poolControl.setMaxTotal(hostConfig.getPoolSize() * hosts.size() + 60);
+			
+			// 负载均衡时每个实例各有poolSize个连接
+			for (HttpHost host : hosts) {
+				poolControl.setMaxPerRoute(getRoute(host), hostConfig.getPoolSize());
+			}
+			
+			poolControl.setDefaultMaxPerRoute(20);
+		} else {
+			poolControl.setMaxTotal(hostConfig.getPoolSize());
+			int hostCount = hostConfig.getHostCount() == 0 ? 10 : hostConfig.getHostCount();
+			poolControl.setDefaultMaxPerRoute(hostConfig.getPoolSize() / hostCount);
+		}
+
+		int routeMaxTotal = 0;
+
+		for (Map.Entry<HttpHost, Integer> entry : extendedConfig.getRouteMaxConnections().entrySet()) {
+			poolControl.setMaxPerRoute(getRoute(entry.getKey()), entry.getValue());
+			routeMaxTotal += entry.getValue();
+		}
+
+		if (routeMaxTotal > poolControl.getMaxTotal()) {
+			poolControl.setMaxTotal(routeMaxTotal);
+		}
+
+		routeRequestConfigs = new HashMap<HttpRoute, RequestConfig>();
+
+		for (Map.Entry<HttpHost, RequestConfig> entry : extendedConfig.getRouteRequestConfigs().entrySet()) {
+			routeRequestConfigs.put(getRoute(entry.getKey()), entry.getValue());
+		}
+
+		idleConnectionEvictor = IdleConnectionEvictor.start(connManager, extendedConfig.getIdleConnectionTimeout(),
+				extendedConfig.getEvictionPeriod());
 
 		if (requestInterceptor == null) {
 			requestInterceptor = new SortHeadersInterceptor(hostConfig);
 		}
+
+		if (asyncExecutor == null && isVirtualThreads) {
+			asyncExecutor = newVirtualThreadExecutor();
+			isOwnAsyncExecutor = asyncExecutor != null;
+			// 虚拟线程不会耗尽，对冲请求可直接使用
+			hedgingExecutor = asyncExecutor;
+
+			if (asyncExecutor != null) {
+				// 连接池在synchronized块内等待租约，虚拟线程在其中等待会占住载体线程。
+				// 先按每个主机和总连接数排队（基于ReentrantLock和Semaphore，不占载体线程），进入连接池的请求不再需要等待
+				leasePermits = new LeasePermits(poolControl.getMaxTotal());
+
+				if (priorityLeaseGate == null)
+					priorityLeaseGate = new PriorityLeaseGate();
+			}
+		}
+
+		if (asyncExecutor == null) {
+			// 异步线程数与连接池大小一致，多出的线程只会等待连接；空闲线程60秒后回收
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(hostConfig.getPoolSize(), hostConfig.getPoolSize(),
+					60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("http-async"));
+			executor.allowCoreThreadTimeOut(true);
+
+			asyncExecutor = executor;
+			isOwnAsyncExecutor = true;
+		}
+
+		if (hedgingExecutor == null) {
+			// 对冲请求不能使用有界的异步线程池，否则在异步线程中发起对冲请求可能因线程耗尽而死锁
+			hedgingExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("http-hedging"));
+		}
+
+		if (poolSizeController != null) {
+			// 按优先级分配连接时请求在PriorityLeaseGate排队，不会进入连接池等待
+			poolSizeController.start((InstrumentedPool) poolControl, priorityLeaseGate);
+		}
 		
 		if (!hostConfig.isMulticlient()) {
 			defaultHttpContext = HttpClientContext.create();
-			httpClient = create();
+		} else {
+			sessionContextCache = new SessionContextCache(sessionCacheSize, sessionIdleTimeout) {
+
+				@Override
+				protected HttpClientContext createContext() {
+					return createSessionContext();
+				}
+			};
+		}
+
+		httpClient = create();
+
+		if (prewarmConnections > 0 && isKeepAlive) {
+			for (HttpHost host : getConfiguredHosts()) {
+				prewarmedConnections += prewarm(host, prewarmConnections, prewarmTimeout);
+			}
 		}
 	}
 
-	private CloseableHttpClient create() {
+	/**
+	 * 并行建立连接（包括TLS握手）并放回连接池，最多等待timeout毫秒，超时后建立的连接仍会放回连接池但不计入结果。
+	 * 建立好的连接要等全部完成后再一起放回，否则后面的租约会拿到刚放回的连接。
+	 * 
+	 * @return 成功建立的连接数
+	 */
+	private int prewarm(HttpHost host, int connections, long timeout) {
+
+		final HttpRoute route = getRoute(host);
+		final int count = Math.min(connections, poolControl.getMaxPerRoute(route));
+		final int connectTimeout = Math.max(0, hostConfig.getRequestConfig().getConnectTimeout());
+		final long start = System.currentTimeMillis();
+		final long deadline = start + timeout;
+		final CountDownLatch done = new CountDownLatch(count);
+		final List<HttpClientConnection> warmed = new ArrayList<HttpClientConnection>(count);
+		final boolean[] closed = new boolean[1];
+
+		for (int i = 0; i < count; i++) {
+			// 对冲线程池不限线程数，等待期间不会占满
+			hedgingExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					HttpClientConnection conn = null;
+
+					try {
+						ConnectionRequest connRequest = connManager.requestConnection(route, null);
+						conn = connRequest.get(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+						HttpClientContext context = HttpClientContext.create();
+						connManager.connect(conn, route, connectTimeout, context);
+						connManager.routeComplete(conn, route, context);
+
+						synchronized (warmed) {
+							if (!closed[0]) {
+								warmed.add(conn);
+								return;
+							}
+						}
+					} catch (Exception e) {
+						log.debug("Prewarm connection to " + route + " failed: " + e);
+					} finally {
+						done.countDown();
+					}
 
-		CookieStore cookieStore = null;
+					// 失败或超时后才建立的连接
+					if (conn != null)
+						connManager.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+				}
+			});
+		}
 
 		try {
-			if (defaultCookieStoreClass != null)
-				cookieStore = defaultCookieStoreClass.newInstance();
-		} catch (InstantiationException e) {
-		} catch (IllegalAccessException e) {
+			done.await(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		int result;
+
+		synchronized (warmed) {
+			closed[0] = true;
+			result = warmed.size();
+		}
+
+		for (HttpClientConnection conn : warmed) {
+			connManager.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+		}
+
+		log.info(String.format("Prewarmed %d of %d connections to %s in %d ms", result, count, route,
+				System.currentTimeMillis() - start));
+
+		return result;
+	}
+
+	/**
+	 * 通过反射创建虚拟线程执行器（JDK 21+），当前JVM不支持时返回null。
+	 * 
+	 * @return
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "http-virtual-", 1L);
+			ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+			Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			return (ExecutorService) newExecutor.invoke(null, factory);
+		} catch (Exception e) {
+			log.info("Virtual threads are not available on this JVM, fall back to platform threads.");
+			return null;
 		}
+	}
+
+	private PoolingHttpClientConnectionManager createConnectionManager(HttpClientConnectionOperator connectionOperator,
+			SocketConfig socketConfig, ConnectionConfig connectionConfig, boolean instrumented) {
+
+		PoolingHttpClientConnectionManager poolingConnManager = instrumented
+				? new InstrumentedConnectionManager(connectionOperator)
+				: new PoolingHttpClientConnectionManager(connectionOperator, null, -1, TimeUnit.MILLISECONDS);
+
+		poolingConnManager.setDefaultSocketConfig(socketConfig);
+		poolingConnManager.setDefaultConnectionConfig(connectionConfig);
+
+		return poolingConnManager;
+	}
+
+	private CloseableHttpClient create() {
 
 		HttpClientBuilder builder = HttpClients.custom().setConnectionManager(connManager)
 				.setDefaultRequestConfig(hostConfig.getRequestConfig()).setRetryHandler(retryHandler)
-				.setDefaultCookieStore(cookieStore);
+				.setDefaultCookieStore(createCookieStore());
 
 		if (isKeepAlive) {
 			builder.setKeepAliveStrategy(keepAliveStrategy);
+
+			if (keepAliveStrategy instanceof LearningKeepAliveStrategy) {
+				LearningKeepAliveStrategy learningStrategy = (LearningKeepAliveStrategy) keepAliveStrategy;
+				builder.setConnectionManager(learningStrategy.track(connManager))
+						.setRequestExecutor(learningStrategy.createRequestExecutor())
+						.setRetryHandler(learningStrategy.observe(retryHandler));
+			}
 		} else {
 			builder.setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE);
 		}
@@ -671,7 +1927,20 @@ public class Request {
 	}
 
 	public void shutdown() {
+		idleConnectionEvictor.shutdown();
+		if (poolSizeController != null) {
+			poolSizeController.stop();
+		}
+		if (isOwnAsyncExecutor) {
+			asyncExecutor.shutdown();
+		}
+		if (hedgingExecutor != asyncExecutor) {
+			hedgingExecutor.shutdown();
+		}
 		connManager.shutdown();
+		if (parallelConnectionOperator != null) {
+			parallelConnectionOperator.shutdown();
+		}
 	}
 	
 	public WorkerBuilder worker() {
@@ -758,6 +2027,113 @@ public class Request {
 		return new WorkerBuilder(this, HttpDelete.METHOD_NAME, url);
 	}
 	
+	/**
+	 * 记录响应状态码，用于区分服务端故障与业务错误
+	 */
+	private static class StatusRecordingResponseHandler<T> implements ResponseHandler<T> {
+
+		private final ResponseHandler<T> responseHandler;
+
+		private volatile int statusCode;
+
+		StatusRecordingResponseHandler(ResponseHandler<T> responseHandler) {
+			this.responseHandler = responseHandler;
+		}
+
+		@Override
+		public T handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+			statusCode = response.getStatusLine().getStatusCode();
+			return responseHandler.handleResponse(response);
+		}
+
+		int getStatusCode() {
+			return statusCode;
+		}
+	}
+
+	/**
+	 * 连接池总连接数的许可，许可数随连接池的maxTotal调整
+	 */
+	@SuppressWarnings("serial")
+	private static class LeasePermits extends Semaphore {
+
+		private int limit;
+
+		LeasePermits(int limit) {
+			super(limit);
+			this.limit = limit;
+		}
+
+		/**
+		 * @param limit 当前的总连接数
+		 * @param timeout 最长等待时间，单位：毫秒，小于等于0表示一直等待
+		 * @return 是否获得许可
+		 * @throws InterruptedException
+		 */
+		boolean acquire(int limit, long timeout) throws InterruptedException {
+
+			resize(limit);
+
+			if (timeout <= 0) {
+				acquire();
+				return true;
+			}
+
+			return tryAcquire(timeout, TimeUnit.MILLISECONDS);
+		}
+
+		private synchronized void resize(int newLimit) {
+			if (newLimit > limit) {
+				release(newLimit - limit);
+			} else if (newLimit < limit) {
+				reducePermits(limit - newLimit);
+			}
+			limit = newLimit;
+		}
+	}
+
+	/**
+	 * 到达截止时间时中止请求，中止会取消正在等待的连接池租约或关闭正在使用的连接，
+	 * 并唤醒正在等待订阅者请求数的ResponseBodyPublisher读取线程
+	 */
+	private static class DeadlineTask implements Runnable {
+
+		private final HttpUriRequest httpRequest;
+
+		private final ResponseHandler<?> responseHandler;
+
+		private volatile boolean expired;
+
+		private ScheduledFuture<?> future;
+
+		DeadlineTask(HttpUriRequest httpRequest, ResponseHandler<?> responseHandler) {
+			this.httpRequest = httpRequest;
+			this.responseHandler = responseHandler;
+		}
+
+		@Override
+		public void run() {
+			expired = true;
+			httpRequest.abort();
+
+			if (responseHandler instanceof ResponseBodyPublisher.BodyHandler)
+				((ResponseBodyPublisher.BodyHandler) responseHandler).abort();
+		}
+
+		void schedule(long delay) {
+			future = SharedScheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+		}
+
+		void cancel() {
+			if (future != null)
+				future.cancel(false);
+		}
+
+		boolean isExpired() {
+			return expired;
+		}
+	}
+
 	public static class Builder {
 
 		private HostConfig hostConfig;
@@ -776,6 +2152,36 @@ public class Request {
 
 		private HttpRequestInterceptor requestInterceptor;
 
+		private ExecutorService asyncExecutor;
+
+		private boolean isVirtualThreads = false;
+
+		private int sessionCacheSize = 1024;
+
+		private long sessionIdleTimeout = 30 * 60 * 1000;
+
+		private int prewarmConnections;
+
+		private long prewarmTimeout;
+
+		private boolean isRequestCoalescing = false;
+
+		private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+		private CircuitBreaker circuitBreaker;
+
+		private PriorityLeaseGate priorityLeaseGate;
+
+		private PoolSizeController poolSizeController;
+
+		private DnsResolver dnsResolver;
+
+		private long connectStagger;
+
+		private int poolShards;
+
+		private TlsConfig tlsConfig;
+
 		Builder() {
 
 		}
@@ -785,6 +2191,19 @@ public class Request {
 			return this;
 		}
 
+		/**
+		 * 设置TLS协议版本、加密套件和会话缓存，对所有HTTPS连接有效（包括自定义CA、SSLContext和信任所有证书的情况）。
+		 * 会话缓存的设置不会修改通过{@link #setSslcontext(SSLContext)}传入的SSLContext。
+		 * 握手和会话恢复的次数见{@link Request#getSslConnectionSocketFactory()}。
+		 * 
+		 * @param tlsConfig
+		 * @return
+		 */
+		public Builder setTlsConfig(TlsConfig tlsConfig) {
+			this.tlsConfig = tlsConfig;
+			return this;
+		}
+
 		public Builder setSslcontext(SSLContext sslcontext) {
 			this.sslcontext = sslcontext;
 			return this;
@@ -820,6 +2239,184 @@ public class Request {
 			return this;
 		}
 
+		/**
+		 * 异步请求使用的线程池，不设置时按连接池大小创建。外部传入的线程池不会在shutdown时关闭。
+		 * 异步请求在线程池中以阻塞方式执行，线程数决定了同时执行的异步请求数。
+		 * 
+		 * @param asyncExecutor
+		 * @return
+		 */
+		public Builder setAsyncExecutor(ExecutorService asyncExecutor) {
+			this.asyncExecutor = asyncExecutor;
+			return this;
+		}
+
+		/**
+		 * 异步请求使用虚拟线程执行（JDK 21+），每个请求一个虚拟线程，不占用平台线程。
+		 * 只影响异步接口（doRequestAsync、executeAll、WorkerBuilder的xxxAsync方法）及对冲请求，
+		 * 同步的doRequest及WorkerBuilder同步方法仍在调用方线程中执行。
+		 * <p>
+		 * 连接池（httpcore的AbstractConnPool）在synchronized块内等待连接，虚拟线程在其中等待会占住载体线程。
+		 * 因此启用后请求先按主机连接数（{@link PriorityLeaseGate}，未设置时自动创建）和总连接数排队，
+		 * 排队不占载体线程，进入连接池时总有可用连接。
+		 * <p>
+		 * JVM不支持虚拟线程时回退到按连接池大小创建的线程池。设置了{@link #setAsyncExecutor(ExecutorService)}时无效。
+		 * 
+		 * @return
+		 */
+		public Builder withVirtualThreads() {
+			this.isVirtualThreads = true;
+			return this;
+		}
+
+		/**
+		 * 多客户端模式下最多缓存的会话数，超出时淘汰最近最少使用的会话。默认1024
+		 * 
+		 * @param sessionCacheSize
+		 * @return
+		 */
+		public Builder setSessionCacheSize(int sessionCacheSize) {
+			this.sessionCacheSize = Args.positive(sessionCacheSize, "sessionCacheSize");
+			return this;
+		}
+
+		/**
+		 * 多客户端模式下会话的空闲超时时间，超时后会话的Cookie被丢弃。单位：毫秒，默认30分钟，小于等于0表示不过期
+		 * 
+		 * @param sessionIdleTimeout
+		 * @return
+		 */
+		public Builder setSessionIdleTimeout(long sessionIdleTimeout) {
+			this.sessionIdleTimeout = sessionIdleTimeout;
+			return this;
+		}
+
+		/**
+		 * 初始化时并行建立connections个到HostConfig主机的连接（包括TLS握手），最多等待10秒。
+		 * 
+		 * @param connections 连接数，不超过连接池中该主机的最大连接数
+		 * @return
+		 * @see #prewarm(int, long)
+		 */
+		public Builder prewarm(int connections) {
+			return prewarm(connections, 10000);
+		}
+
+		/**
+		 * 初始化时并行建立connections个到HostConfig主机的连接（包括TLS握手），使第一批请求就能使用已建立的连接。
+		 * 成功建立的连接数见{@link Request#getPrewarmedConnections()}。
+		 * 
+		 * @param connections 连接数，不超过连接池中该主机的最大连接数
+		 * @param timeout 最长等待时间，单位：毫秒
+		 * @return
+		 */
+		public Builder prewarm(int connections, long timeout) {
+			this.prewarmConnections = Args.notNegative(connections, "connections");
+			this.prewarmTimeout = Args.positive(timeout, "timeout");
+			return this;
+		}
+
+		/**
+		 * 开启请求合并：并发的相同GET/HEAD请求（相同的URL、参数、会话及结果类型）只发出一次，共享同一个结果。
+		 * 共享的JSONObject、XmlObject等结果对象不应被调用者修改。
+		 * 
+		 * @return
+		 */
+		public Builder withRequestCoalescing() {
+			this.isRequestCoalescing = true;
+			return this;
+		}
+
+		/**
+		 * 设置按目标主机自适应调整的并发限制，超过限制的请求抛出{@link RequestRejectedException}，不再等待连接。
+		 * 
+		 * @param concurrencyLimiter
+		 * @return
+		 */
+		public Builder setConcurrencyLimiter(AdaptiveConcurrencyLimiter concurrencyLimiter) {
+			this.concurrencyLimiter = concurrencyLimiter;
+			return this;
+		}
+
+		/**
+		 * 设置按目标主机的熔断器，熔断期间请求直接抛出{@link RequestRejectedException}，不占用连接也不等待连接超时。
+		 * 
+		 * @param circuitBreaker
+		 * @return
+		 */
+		public Builder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+			this.circuitBreaker = circuitBreaker;
+			return this;
+		}
+
+		/**
+		 * 按优先级分配连接，连接不足时高优先级的请求先获得连接，见{@link WorkerBuilder#withPriority(Priority)}。
+		 * 
+		 * @param priorityLeaseGate
+		 * @return
+		 */
+		public Builder setPriorityLeaseGate(PriorityLeaseGate priorityLeaseGate) {
+			this.priorityLeaseGate = priorityLeaseGate;
+			return this;
+		}
+
+		/**
+		 * 按连接池统计和获取连接的等待时间定期调整每个路由的最大连接数，HostConfig的连接数作为初始值。
+		 * 
+		 * @param poolSizeController
+		 * @return
+		 */
+		public Builder setPoolSizeController(PoolSizeController poolSizeController) {
+			this.poolSizeController = poolSizeController;
+			return this;
+		}
+
+		/**
+		 * 设置建立连接时使用的DNS解析，如{@link CachingDnsResolver}，默认使用JVM的解析。
+		 * 
+		 * @param dnsResolver
+		 * @return
+		 */
+		public Builder setDnsResolver(DnsResolver dnsResolver) {
+			this.dnsResolver = dnsResolver;
+			return this;
+		}
+
+		/**
+		 * 开启并行建立连接，相邻两次连接尝试间隔250毫秒。
+		 * 
+		 * @return
+		 * @see #withParallelConnect(long)
+		 */
+		public Builder withParallelConnect() {
+			return withParallelConnect(250);
+		}
+
+		/**
+		 * 开启并行建立连接：主机解析出多个地址时，每隔stagger毫秒向下一个地址发起连接，使用最先建立成功的连接，
+		 * 避免第一个地址不通时要等满connectTimeout。见{@link ParallelConnectionOperator}。
+		 * 
+		 * @param stagger 相邻两次连接尝试的间隔，单位：毫秒
+		 * @return
+		 */
+		public Builder withParallelConnect(long stagger) {
+			this.connectStagger = Args.positive(stagger, "stagger");
+			return this;
+		}
+
+		/**
+		 * 把连接池分成shards个各自加锁的分片，各路由的连接数平均分到各分片，用于多核下高并发访问同一主机时减少连接池锁的争用。
+		 * 线程按ID使用固定的分片，分片用完时从其他分片借用。小于2时不分片（默认）。
+		 * 每个分片至少要分到一个连接，分片数一般取CPU核数的1/4到1/2，并且不超过单个路由的最大连接数。
+		 * 
+		 * @param shards 分片数
+		 * @return
+		 */
+		public Builder setPoolShards(int shards) {
+			this.poolShards = Args.notNegative(shards, "shards");
+			return this;
+		}
+
 		public Request build() {
 			
 			Args.notNull(hostConfig, "HostConfig");
@@ -834,6 +2431,21 @@ public class Request {
 				request.setRequestInterceptor(requestInterceptor);
 				request.setRetryHandler(retryHandler);
 				request.setSslcontext(sslcontext);
+				request.setAsyncExecutor(asyncExecutor);
+				request.setVirtualThreads(isVirtualThreads);
+				request.setSessionCacheSize(sessionCacheSize);
+				request.setSessionIdleTimeout(sessionIdleTimeout);
+				request.setPrewarm(prewarmConnections, prewarmTimeout);
+				if (isRequestCoalescing)
+					request.setRequestCoalescer(new RequestCoalescer());
+				request.setConcurrencyLimiter(concurrencyLimiter);
+				request.setCircuitBreaker(circuitBreaker);
+				request.setPriorityLeaseGate(priorityLeaseGate);
+				request.setPoolSizeController(poolSizeController);
+				request.setDnsResolver(dnsResolver);
+				request.setConnectStagger(connectStagger);
+				request.setPoolShards(poolShards);
+				request.setTlsConfig(tlsConfig);
 				
 				request.init();
 				return request;
@@ -0,0 +1,117 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.concurrent.BasicFuture;
+
+/**
+ * 合并相同的并发请求：同一时刻相同key的请求只有第一个真正发出，其余请求等待并共享它的结果或异常。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class RequestCoalescer {
+
+	private final ConcurrentMap<String, BasicFuture<Object>> inFlight = new ConcurrentHashMap<String, BasicFuture<Object>>();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * @param key
+	 * @param deadlineAt 等待其他请求结果的截止时间点（毫秒时间戳），0表示不限制，超时抛出SocketTimeoutException
+	 * @param task
+	 * @return
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String key, long deadlineAt, Callable<T> task) throws Exception {
+
+		BasicFuture<Object> future = new BasicFuture<Object>(null);
+		BasicFuture<Object> existing = inFlight.putIfAbsent(key, future);
+
+		if (existing != null) {
+			hitCount.incrementAndGet();
+
+			try {
+				if (deadlineAt <= 0)
+					return (T) existing.get();
+
+				long remaining = deadlineAt - System.currentTimeMillis();
+
+				if (remaining <= 0)
+					throw new TimeoutException();
+
+				return (T) existing.get(remaining, TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception)
+					throw (Exception) cause;
+				throw e;
+			} catch (TimeoutException e) {
+				throw new SocketTimeoutException("Deadline exceeded while waiting for coalesced request " + key);
+			}
+		}
+
+		missCount.incrementAndGet();
+
+		try {
+			T result = task.call();
+			future.completed(result);
+			return result;
+		} catch (Exception e) {
+			future.failed(e);
+			throw e;
+		} catch (Error e) {
+			future.failed(new RuntimeException(e));
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * @return 共享了其他请求结果的请求数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return 实际发出的请求数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return 当前正在执行的不同请求数
+	 */
+	public int getInFlightCount() {
+		return inFlight.size();
+	}
+
+}
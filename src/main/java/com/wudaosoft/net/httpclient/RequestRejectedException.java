@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+
+/**
+ * 请求在发出前被客户端拒绝（未占用连接），例如超过并发限制。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class RequestRejectedException extends IOException {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2034786451227816374L;
+
+	/**
+	 * @param message
+	 */
+	public RequestRejectedException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,355 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.apache.http.impl.execchain.RequestAbortedException;
+import org.apache.http.util.Args;
+import org.apache.http.util.EntityUtils;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * 以Reactive Streams的方式读取返回数据，只支持一个订阅者。
+ * 订阅者请求数据（request(n)）后才发出请求，每次最多读取chunkSize字节并发送给订阅者，
+ * 没有未满足的请求数时停止读取socket，由TCP流控让上游放慢发送速度。
+ * 读取在Request的异步线程池中执行，读取期间一直占用一个线程和一个连接。
+ * 订阅取消后不再发出任何通知；剩余数据不超过{@link #MAX_DRAIN_ON_CANCEL}字节时读完并复用连接，否则关闭连接。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class ResponseBodyPublisher implements Publisher<ByteBuffer> {
+
+	public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+	/**
+	 * 取消订阅时读完剩余数据以复用连接的上限，单位：字节
+	 */
+	public static final int MAX_DRAIN_ON_CANCEL = 64 * 1024;
+
+	private final Request request;
+
+	private final WorkerBuilder workerBuilder;
+
+	private final int chunkSize;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private BodySubscription subscription;
+
+	ResponseBodyPublisher(Request request, WorkerBuilder workerBuilder, int chunkSize) {
+		this.request = request;
+		this.workerBuilder = workerBuilder;
+		this.chunkSize = Args.positive(chunkSize, "chunkSize");
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+
+		// 规范1.9：订阅者为null时抛出NullPointerException
+		if (subscriber == null)
+			throw new NullPointerException("subscriber");
+
+		boolean accepted;
+
+		lock.lock();
+		try {
+			accepted = subscription == null;
+			if (accepted)
+				subscription = new BodySubscription(subscriber);
+		} finally {
+			lock.unlock();
+		}
+
+		if (accepted) {
+			subscriber.onSubscribe(subscription);
+		} else {
+			subscriber.onSubscribe(new Subscription() {
+
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException("ResponseBodyPublisher allows only a single subscriber"));
+		}
+	}
+
+	private class BodySubscription implements Subscription, FutureCallback<Object> {
+
+		private final Subscriber<? super ByteBuffer> subscriber;
+
+		private final Condition demanded = lock.newCondition();
+
+		private long demand;
+
+		private boolean started;
+
+		private boolean cancelled;
+
+		private boolean aborted;
+
+		private IllegalArgumentException illegalRequest;
+
+		BodySubscription(Subscriber<? super ByteBuffer> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+
+			boolean start = false;
+			IllegalArgumentException error = null;
+
+			lock.lock();
+			try {
+				if (cancelled)
+					return;
+
+				if (n <= 0) {
+					// 规范3.9：非正数的请求数以onError通知订阅者
+					error = new IllegalArgumentException("Subscription.request must be positive, but was " + n);
+					cancelled = true;
+
+					if (started) {
+						// 由读取线程发出onError，保证通知是串行的
+						illegalRequest = error;
+						error = null;
+						demanded.signal();
+					}
+				} else {
+					demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+					start = !started;
+					started = true;
+					demanded.signal();
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			if (error != null) {
+				subscriber.onError(error);
+			} else if (start) {
+				request.doRequestAsync(workerBuilder, new BodyHandler(this), this);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			lock.lock();
+			try {
+				cancelled = true;
+				demanded.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * 请求被中止（如到达截止时间）时唤醒等待请求数的读取线程
+		 */
+		void abort() {
+			lock.lock();
+			try {
+				aborted = true;
+				demanded.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * 等待订阅者的请求数
+		 *
+		 * @return 订阅已取消时返回false
+		 * @throws RequestAbortedException 请求已被中止
+		 */
+		boolean awaitDemand() throws InterruptedException, RequestAbortedException {
+			lock.lock();
+			try {
+				while (demand == 0 && !cancelled && !aborted) {
+					demanded.await();
+				}
+
+				if (cancelled)
+					return false;
+
+				if (aborted)
+					throw new RequestAbortedException("Request aborted");
+
+				demand--;
+				return true;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		boolean isCancelled() {
+			lock.lock();
+			try {
+				return cancelled;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * @return 订阅已取消时不发送并返回false
+		 */
+		boolean onNext(ByteBuffer chunk) {
+
+			if (isCancelled())
+				return false;
+
+			subscriber.onNext(chunk);
+			return true;
+		}
+
+		@Override
+		public void completed(Object result) {
+
+			if (isCancelled())
+				return;
+
+			subscriber.onComplete();
+		}
+
+		@Override
+		public void failed(Exception ex) {
+
+			IllegalArgumentException error;
+
+			lock.lock();
+			try {
+				error = illegalRequest;
+
+				if (cancelled && error == null)
+					return;
+			} finally {
+				lock.unlock();
+			}
+
+			subscriber.onError(error != null ? error : ex);
+		}
+
+		@Override
+		public void cancelled() {
+			abort();
+		}
+	}
+
+	/**
+	 * 在Request的异步线程中按订阅者的请求数读取返回数据。订阅取消时剩余数据较少则读完并正常返回，
+	 * 否则关闭连接并抛出RequestAbortedException。
+	 */
+	class BodyHandler implements ResponseHandler<Object> {
+
+		private final BodySubscription subscription;
+
+		BodyHandler(BodySubscription subscription) {
+			this.subscription = subscription;
+		}
+
+		/**
+		 * 请求被中止，唤醒等待订阅者请求数的读取线程
+		 */
+		void abort() {
+			subscription.abort();
+		}
+
+		@Override
+		public Object handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
+
+			int status = response.getStatusLine().getStatusCode();
+
+			if (status < 200 || status >= 300) {
+				throw new ClientProtocolException("Unexpected response status: " + status);
+			}
+
+			HttpEntity entity = response.getEntity();
+
+			if (entity == null)
+				return null;
+
+			InputStream inputStream = entity.getContent();
+			long read = 0;
+
+			try {
+				while (true) {
+					if (!subscription.awaitDemand())
+						return cancel(entity, inputStream, read);
+
+					byte[] buff = new byte[chunkSize];
+					int l = inputStream.read(buff);
+
+					if (l == -1)
+						return null;
+
+					read += l;
+
+					if (!subscription.onNext(ByteBuffer.wrap(buff, 0, l)))
+						return cancel(entity, inputStream, read);
+				}
+			} catch (RequestAbortedException e) {
+				abort(inputStream);
+				throw e;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				abort(inputStream);
+				throw new RequestAbortedException("Interrupted while waiting for demand");
+			}
+		}
+
+		private Object cancel(HttpEntity entity, InputStream inputStream, long read) throws IOException {
+
+			long length = entity.getContentLength();
+
+			if (length >= 0 && length - read <= MAX_DRAIN_ON_CANCEL) {
+				// 剩余数据不多，读完后连接可以复用
+				EntityUtils.consume(entity);
+				return null;
+			}
+
+			abort(inputStream);
+			throw new RequestAbortedException("Subscription cancelled");
+		}
+
+		/**
+		 * 关闭连接，避免HttpClient在异常后读完剩余的数据
+		 */
+		private void abort(InputStream inputStream) throws IOException {
+			if (inputStream instanceof ConnectionReleaseTrigger)
+				((ConnectionReleaseTrigger) inputStream).abortConnection();
+		}
+	}
+
+}
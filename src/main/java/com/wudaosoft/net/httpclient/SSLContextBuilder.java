@@ -15,25 +15,72 @@
  */
 package com.wudaosoft.net.httpclient;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.KeyStore;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.ssl.SSLContexts;
 import org.apache.http.util.Args;
 
 /**
+ * 从证书文件创建SSLContext。
+ * 创建的SSLContext按证书URL和加盐的密码摘要缓存（盐在每个进程中随机生成），最多缓存{@link #MAX_CACHE_SIZE}个，
+ * 超过时淘汰最久未使用的；相同证书的Request共用同一个SSLContext及其TLS会话缓存；
+ * file:协议的证书文件修改时间或大小变化后，下次创建时重新加载（已创建的Request仍使用原来的SSLContext）。
+ * 会话缓存的大小和超时时间也是缓存的键的一部分，设置不同的Request不会共用（并互相修改）同一个SSLContext。
+ *
  * @author changsoul.wu
  *
  */
 public class SSLContextBuilder {
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * 最多缓存的SSLContext数
+	 */
+	public static final int MAX_CACHE_SIZE = 32;
+
+	private static final byte[] SALT = new byte[16];
+
+	private static final ReentrantLock cacheLock = new ReentrantLock();
+
+	private static final LinkedHashMap<String, CachedContext> cache = new LinkedHashMap<String, CachedContext>(16,
+			0.75f, true) {
+
+		private static final long serialVersionUID = -3208165727381582711L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedContext> eldest) {
+			return size() > MAX_CACHE_SIZE;
+		}
+	};
+
+	static {
+		new SecureRandom().nextBytes(SALT);
+	}
+
 	private String password;
 	
 	private URL cert;
 
+	private boolean cached = true;
+
+	private int sessionCacheSize = -1;
+
+	private int sessionTimeout = -1;
+
 	/**
 	 * @param password the password to set
 	 */
@@ -50,27 +97,161 @@ public class SSLContextBuilder {
 		return this;
 	}
 
+	/**
+	 * @param cached 是否使用缓存，默认true
+	 */
+	public SSLContextBuilder setCached(boolean cached) {
+		this.cached = cached;
+		return this;
+	}
+
+	/**
+	 * @param sessionCacheSize 客户端会话缓存最多缓存的会话数，0表示不限，默认使用JVM的设置
+	 */
+	public SSLContextBuilder setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = Args.notNegative(sessionCacheSize, "sessionCacheSize");
+		return this;
+	}
+
+	/**
+	 * @param sessionTimeout 客户端会话缓存中会话的有效时间，单位：秒，0表示不限，默认使用JVM的设置
+	 */
+	public SSLContextBuilder setSessionTimeout(int sessionTimeout) {
+		this.sessionTimeout = Args.notNegative(sessionTimeout, "sessionTimeout");
+		return this;
+	}
+
+	/**
+	 * 以PKCS12证书作为客户端证书
+	 * 
+	 * @return
+	 */
 	public SSLContext buildPKCS12() {
 
 		Args.notEmpty(password, "password");
 		Args.notNull(cert, "cert");
 
-		char[] pwd = password.toCharArray();
+		return build("PKCS12");
+	}
+
+	/**
+	 * 以证书库（KeyStore默认类型）作为信任库，信任其中的根证书签发的证书和所有自签名证书
+	 * 
+	 * @return
+	 */
+	public SSLContext buildTrustMaterial() {
+
+		Args.notNull(cert, "cert");
+
+		return build("trust");
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public static void clearCache() {
+		cacheLock.lock();
+		try {
+			cache.clear();
+		} finally {
+			cacheLock.unlock();
+		}
+	}
+
+	static int cacheSize() {
+		cacheLock.lock();
+		try {
+			return cache.size();
+		} finally {
+			cacheLock.unlock();
+		}
+	}
+
+	private SSLContext build(String type) {
+
+		if (!cached)
+			return load(type);
+
+		String key = type + "|" + cert.toExternalForm() + "|" + digest(password) + "|" + sessionCacheSize + "|"
+				+ sessionTimeout;
+
+		CachedContext entry;
+
+		cacheLock.lock();
+		try {
+			entry = cache.get(key);
+
+			if (entry == null) {
+				entry = new CachedContext();
+				cache.put(key, entry);
+			}
+		} finally {
+			cacheLock.unlock();
+		}
+
+		// 在锁外加载证书，不阻塞其他证书的创建
+		synchronized (entry) {
+
+			long lastModified = 0;
+			long length = 0;
+
+			File file = toFile(cert);
+
+			if (file != null) {
+				lastModified = file.lastModified();
+				length = file.length();
+			}
+
+			if (entry.sslContext == null || entry.lastModified != lastModified || entry.length != length) {
+				entry.sslContext = load(type);
+				entry.lastModified = lastModified;
+				entry.length = length;
+			}
+
+			return entry.sslContext;
+		}
+	}
+
+	private SSLContext load(String type) {
+
+		SSLContext sslContext = create(type);
+
+		TlsConfig.applySessionCache(sslContext, sessionCacheSize, sessionTimeout);
+
+		return sslContext;
+	}
+
+	private SSLContext create(String type) {
+
+		char[] pwd = password != null ? password.toCharArray() : null;
 
 		try {
-			KeyStore ks = KeyStore.getInstance("PKCS12");
-			
-			ks.load(cert.openStream(), pwd);
-
-			// 实例化密钥库 & 初始化密钥工厂
-			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-			kmf.init(ks, pwd);
-
-			// 创建 SSLContext
-			SSLContext sslContext = SSLContext.getInstance("TLS");
-			sslContext.init(kmf.getKeyManagers(), null, new SecureRandom());
-			
-			return sslContext;
+			InputStream in = cert.openStream();
+
+			try {
+				if ("trust".equals(type)) {
+					KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+					trustStore.load(in, pwd);
+
+					// Trust root CA and all self-signed certs
+					return SSLContexts.custom().loadTrustMaterial(trustStore, TrustSelfSignedStrategy.INSTANCE).build();
+				}
+
+				KeyStore ks = KeyStore.getInstance(type);
+				ks.load(in, pwd);
+
+				// 实例化密钥库 & 初始化密钥工厂
+				KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+				kmf.init(ks, pwd);
+
+				// 创建 SSLContext，使用JVM默认的SecureRandom
+				SSLContext sslContext = SSLContext.getInstance("TLS");
+				sslContext.init(kmf.getKeyManagers(), null, null);
+
+				return sslContext;
+			} finally {
+				in.close();
+			}
 		} catch (Exception e) {
 			if (e instanceof RuntimeException)
 				throw (RuntimeException) e;
@@ -78,4 +259,49 @@ public class SSLContextBuilder {
 		}
 	}
 
+	private static File toFile(URL url) {
+
+		if (!"file".equals(url.getProtocol()))
+			return null;
+
+		try {
+			return new File(url.toURI());
+		} catch (Exception e) {
+			return new File(url.getPath());
+		}
+	}
+
+	/**
+	 * 缓存的键中不保存密码原文，加盐避免通过摘要反查密码
+	 */
+	private static String digest(String password) {
+
+		if (password == null)
+			return "";
+
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			md.update(SALT);
+			byte[] hash = md.digest(password.getBytes(UTF_8));
+			StringBuilder hex = new StringBuilder(hash.length * 2);
+
+			for (byte b : hash) {
+				hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return hex.toString();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static class CachedContext {
+
+		SSLContext sslContext;
+
+		long lastModified;
+
+		long length;
+	}
+
 }
@@ -0,0 +1,114 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.client.protocol.HttpClientContext;
+
+/**
+ * 多客户端模式下按会话ID缓存的请求上下文（含独立的CookieStore），
+ * 按最近最少使用淘汰，空闲超时的会话在下次访问时重建。
+ *
+ * @author changsoul.wu
+ *
+ */
+abstract class SessionContextCache {
+
+	private final int maxSize;
+
+	private final long idleTimeout;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final LinkedHashMap<String, Entry> contexts;
+
+	/**
+	 * @param maxSize 最大缓存会话数
+	 * @param idleTimeout 会话空闲超时时间，单位：毫秒，小于等于0表示不过期
+	 */
+	SessionContextCache(final int maxSize, long idleTimeout) {
+		this.maxSize = maxSize;
+		this.idleTimeout = idleTimeout;
+		this.contexts = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 6165379211578231043L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > SessionContextCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return 新会话的上下文
+	 */
+	protected abstract HttpClientContext createContext();
+
+	public HttpClientContext get(String sessionId) {
+
+		long now = System.currentTimeMillis();
+
+		lock.lock();
+		try {
+			Entry entry = contexts.get(sessionId);
+
+			if (entry == null || (idleTimeout > 0 && now - entry.lastAccess > idleTimeout)) {
+				entry = new Entry(createContext());
+				contexts.put(sessionId, entry);
+			}
+
+			entry.lastAccess = now;
+
+			return entry.context;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void remove(String sessionId) {
+		lock.lock();
+		try {
+			contexts.remove(sessionId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return contexts.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private static class Entry {
+
+		final HttpClientContext context;
+
+		long lastAccess;
+
+		Entry(HttpClientContext context) {
+			this.context = context;
+		}
+	}
+
+}
@@ -0,0 +1,477 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * 分片的连接池：由多个各自加锁的连接池组成，连接数平均分到各分片，避免多核高并发时争用同一个连接池锁。
+ * 线程按ID固定使用一个分片；该分片没有空闲连接且已满时，优先取其他分片的空闲连接，其次在有空余的分片上新建连接，
+ * 都没有时在本分片（本分片的连接数为0时在下一个有连接数的分片）排队等待。
+ * 选择分片时使用本类在借出和归还时维护的计数，不获取分片的连接池锁；空闲连接数在分片上等待超时和清理空闲连接后按连接池的实际状态校正。
+ *
+ * @author changsoul.wu
+ *
+ */
+class ShardedConnectionManager implements HttpClientConnectionManager, InstrumentedPool {
+
+	private static final long STEAL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private final PoolingHttpClientConnectionManager[] shards;
+
+	/**
+	 * 已借出的连接所属的分片
+	 */
+	private final ConcurrentMap<HttpClientConnection, Lease> leased = new ConcurrentHashMap<HttpClientConnection, Lease>();
+
+	/**
+	 * 每个路由在各分片上的连接计数
+	 */
+	private final ConcurrentMap<HttpRoute, RouteCounts> counts = new ConcurrentHashMap<HttpRoute, RouteCounts>();
+
+	private final ConcurrentMap<HttpRoute, Integer> maxPerRoute = new ConcurrentHashMap<HttpRoute, Integer>();
+
+	private volatile int defaultMaxPerRoute;
+
+	/**
+	 * 按整个获取过程统计，分片上分段等待的超时不计入
+	 */
+	private final ConcurrentMap<HttpRoute, InstrumentedConnectionManager.LeaseStats> leaseStats = new ConcurrentHashMap<HttpRoute, InstrumentedConnectionManager.LeaseStats>();
+
+	ShardedConnectionManager(List<? extends PoolingHttpClientConnectionManager> shards) {
+		Args.check(shards.size() > 1, "At least 2 shards are required");
+		this.shards = shards.toArray(new PoolingHttpClientConnectionManager[shards.size()]);
+		this.defaultMaxPerRoute = getDefaultMaxPerRoute();
+	}
+
+	@Override
+	public ConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+
+		return new ConnectionRequest() {
+
+			private volatile ConnectionRequest current;
+
+			private volatile boolean cancelled;
+
+			@Override
+			public HttpClientConnection get(long timeout, TimeUnit tunit)
+					throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+
+				long start = System.nanoTime();
+				long deadline = start + tunit.toNanos(timeout);
+				RouteCounts routeCounts = getCounts(route);
+
+				while (true) {
+
+					int index = selectShard(route, routeCounts);
+					PoolingHttpClientConnectionManager shard = shards[index];
+					ConnectionRequest connRequest = shard.requestConnection(route, state);
+					current = connRequest;
+
+					if (cancelled)
+						connRequest.cancel();
+
+					// 多个线程可能同时选中同一个有空余的分片，分段等待，超过一段时间后重新选择分片
+					long remaining = timeout > 0 ? deadline - System.nanoTime() : Long.MAX_VALUE;
+					long wait = Math.min(remaining, STEAL_INTERVAL_NANOS);
+
+					routeCounts.pending.incrementAndGet(index);
+
+					try {
+						HttpClientConnection conn = connRequest.get(Math.max(1, wait), TimeUnit.NANOSECONDS);
+						routeCounts.onLeased(index, conn.isOpen());
+						leased.put(conn, new Lease(index, routeCounts));
+						getLeaseStats(route).record(System.nanoTime() - start, false);
+						return conn;
+					} catch (ConnectionPoolTimeoutException e) {
+						// 计数与连接池不一致时（如空闲连接已过期被关闭）按实际状态校正
+						routeCounts.sync(index, shard.getStats(route));
+
+						if (cancelled)
+							throw e;
+
+						if (wait == remaining) {
+							getLeaseStats(route).record(System.nanoTime() - start, true);
+							throw e;
+						}
+					} finally {
+						routeCounts.pending.decrementAndGet(index);
+					}
+				}
+			}
+
+			@Override
+			public boolean cancel() {
+
+				cancelled = true;
+				ConnectionRequest connRequest = current;
+
+				return connRequest == null || connRequest.cancel();
+			}
+		};
+	}
+
+	@Override
+	public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+
+		Lease lease = leased.remove(conn);
+
+		if (lease == null)
+			throw new IllegalStateException("Connection not obtained from this manager");
+
+		// 不能复用的连接在归还前已关闭
+		boolean reusable = conn.isOpen();
+
+		shards[lease.shard].releaseConnection(conn, newState, validDuration, timeUnit);
+		lease.counts.onReleased(lease.shard, reusable);
+	}
+
+	@Override
+	public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context)
+			throws IOException {
+		getShard(conn).connect(conn, route, connectTimeout, context);
+	}
+
+	@Override
+	public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+		getShard(conn).upgrade(conn, route, context);
+	}
+
+	@Override
+	public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+		getShard(conn).routeComplete(conn, route, context);
+	}
+
+	@Override
+	public void closeIdleConnections(long idletime, TimeUnit tunit) {
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			shard.closeIdleConnections(idletime, tunit);
+		}
+
+		syncCounts();
+	}
+
+	@Override
+	public void closeExpiredConnections() {
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			shard.closeExpiredConnections();
+		}
+
+		syncCounts();
+	}
+
+	@Override
+	public void shutdown() {
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			shard.shutdown();
+		}
+	}
+
+	@Override
+	public void setMaxTotal(int max) {
+		for (int i = 0; i < shards.length; i++) {
+			shards[i].setMaxTotal(split(max, i));
+		}
+	}
+
+	@Override
+	public int getMaxTotal() {
+
+		int max = 0;
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			max += shard.getMaxTotal();
+		}
+
+		return max;
+	}
+
+	@Override
+	public void setDefaultMaxPerRoute(int max) {
+
+		defaultMaxPerRoute = max;
+
+		for (int i = 0; i < shards.length; i++) {
+			shards[i].setDefaultMaxPerRoute(split(max, i));
+		}
+	}
+
+	@Override
+	public int getDefaultMaxPerRoute() {
+
+		int max = 0;
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			max += shard.getDefaultMaxPerRoute();
+		}
+
+		return max;
+	}
+
+	@Override
+	public void setMaxPerRoute(HttpRoute route, int max) {
+
+		maxPerRoute.put(route, max);
+
+		for (int i = 0; i < shards.length; i++) {
+			shards[i].setMaxPerRoute(route, split(max, i));
+		}
+	}
+
+	@Override
+	public int getMaxPerRoute(HttpRoute route) {
+
+		int max = 0;
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			max += shard.getMaxPerRoute(route);
+		}
+
+		return max;
+	}
+
+	@Override
+	public PoolStats getTotalStats() {
+
+		int leased = 0, pending = 0, available = 0, max = 0;
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			PoolStats stats = shard.getTotalStats();
+			leased += stats.getLeased();
+			pending += stats.getPending();
+			available += stats.getAvailable();
+			max += stats.getMax();
+		}
+
+		return new PoolStats(leased, pending, available, max);
+	}
+
+	@Override
+	public PoolStats getStats(HttpRoute route) {
+
+		int leased = 0, pending = 0, available = 0, max = 0;
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			PoolStats stats = shard.getStats(route);
+			leased += stats.getLeased();
+			pending += stats.getPending();
+			available += stats.getAvailable();
+			max += stats.getMax();
+		}
+
+		return new PoolStats(leased, pending, available, max);
+	}
+
+	@Override
+	public Set<HttpRoute> getRoutes() {
+
+		Set<HttpRoute> routes = new HashSet<HttpRoute>();
+
+		for (PoolingHttpClientConnectionManager shard : shards) {
+			routes.addAll(shard.getRoutes());
+		}
+
+		return routes;
+	}
+
+	@Override
+	public InstrumentedConnectionManager.LeaseStats.Sample drainLeaseStats(HttpRoute route) {
+		return getLeaseStats(route).drain();
+	}
+
+	private InstrumentedConnectionManager.LeaseStats getLeaseStats(HttpRoute route) {
+
+		InstrumentedConnectionManager.LeaseStats stats = leaseStats.get(route);
+
+		if (stats == null) {
+			stats = new InstrumentedConnectionManager.LeaseStats();
+			InstrumentedConnectionManager.LeaseStats existing = leaseStats.putIfAbsent(route, stats);
+			if (existing != null)
+				stats = existing;
+		}
+
+		return stats;
+	}
+
+	/**
+	 * @return 分片数
+	 */
+	int getShardCount() {
+		return shards.length;
+	}
+
+	/**
+	 * 按计数选择分片，不获取分片的连接池锁
+	 */
+	private int selectShard(HttpRoute route, RouteCounts routeCounts) {
+
+		Integer configured = maxPerRoute.get(route);
+		int routeMax = configured != null ? configured : defaultMaxPerRoute;
+
+		int home = (int) (Thread.currentThread().getId() % shards.length);
+
+		if (routeCounts.available.get(home) > 0 || routeCounts.hasCapacity(home, split(routeMax, home)))
+			return home;
+
+		int withCapacity = -1;
+		int fallback = split(routeMax, home) > 0 ? home : -1;
+
+		for (int i = 1; i < shards.length; i++) {
+
+			int index = (home + i) % shards.length;
+			int max = split(routeMax, index);
+
+			// 先取其他分片的空闲连接
+			if (routeCounts.available.get(index) > 0)
+				return index;
+
+			if (withCapacity < 0 && routeCounts.hasCapacity(index, max))
+				withCapacity = index;
+
+			if (fallback < 0 && max > 0)
+				fallback = index;
+		}
+
+		if (withCapacity >= 0)
+			return withCapacity;
+
+		return fallback >= 0 ? fallback : home;
+	}
+
+	private RouteCounts getCounts(HttpRoute route) {
+
+		RouteCounts routeCounts = counts.get(route);
+
+		if (routeCounts == null) {
+			routeCounts = new RouteCounts(shards.length);
+			RouteCounts existing = counts.putIfAbsent(route, routeCounts);
+			if (existing != null)
+				routeCounts = existing;
+		}
+
+		return routeCounts;
+	}
+
+	/**
+	 * 清理空闲连接后按各分片连接池的实际状态校正空闲连接数
+	 */
+	private void syncCounts() {
+		for (Map.Entry<HttpRoute, RouteCounts> entry : counts.entrySet()) {
+			for (int i = 0; i < shards.length; i++) {
+				entry.getValue().sync(i, shards[i].getStats(entry.getKey()));
+			}
+		}
+	}
+
+	private PoolingHttpClientConnectionManager getShard(HttpClientConnection conn) {
+
+		Lease lease = leased.get(conn);
+
+		if (lease == null)
+			throw new IllegalStateException("Connection not obtained from this manager");
+
+		return shards[lease.shard];
+	}
+
+	/**
+	 * 余数分给前面的分片
+	 */
+	private int split(int max, int index) {
+		return max / shards.length + (index < max % shards.length ? 1 : 0);
+	}
+
+	private static class Lease {
+
+		final int shard;
+
+		final RouteCounts counts;
+
+		Lease(int shard, RouteCounts counts) {
+			this.shard = shard;
+			this.counts = counts;
+		}
+	}
+
+	/**
+	 * 一个路由在各分片上借出、等待中和空闲的连接数
+	 */
+	private static class RouteCounts {
+
+		final AtomicIntegerArray leased;
+
+		final AtomicIntegerArray pending;
+
+		final AtomicIntegerArray available;
+
+		RouteCounts(int shards) {
+			leased = new AtomicIntegerArray(shards);
+			pending = new AtomicIntegerArray(shards);
+			available = new AtomicIntegerArray(shards);
+		}
+
+		boolean hasCapacity(int shard, int max) {
+			return leased.get(shard) + pending.get(shard) < max;
+		}
+
+		/**
+		 * @param reused 借出的是已打开的空闲连接
+		 */
+		void onLeased(int shard, boolean reused) {
+
+			leased.incrementAndGet(shard);
+
+			if (reused) {
+				while (true) {
+					int current = available.get(shard);
+					if (current <= 0 || available.compareAndSet(shard, current, current - 1))
+						break;
+				}
+			}
+		}
+
+		void onReleased(int shard, boolean reusable) {
+
+			leased.decrementAndGet(shard);
+
+			if (reusable)
+				available.incrementAndGet(shard);
+		}
+
+		void sync(int shard, PoolStats stats) {
+			available.set(shard, stats.getAvailable());
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 所有Request共用的定时器（单个守护线程），用于请求截止时间等定时任务，避免每个请求或每个Request各起一个线程。
+ * 任务只做中止请求之类的轻量操作，不能阻塞定时线程。
+ *
+ * @author changsoul.wu
+ *
+ */
+final class SharedScheduler {
+
+	/**
+	 * 已取消的任务要到原定时间才会移出队列，定期清理以免大量短请求的截止任务堆积
+	 */
+	private static final long PURGE_PERIOD_SECONDS = 10;
+
+	private static volatile ScheduledThreadPoolExecutor scheduler;
+
+	private SharedScheduler() {
+	}
+
+	static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		return get().schedule(task, delay, unit);
+	}
+
+	static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+		return get().scheduleWithFixedDelay(task, initialDelay, delay, unit);
+	}
+
+	private static ScheduledExecutorService get() {
+
+		ScheduledThreadPoolExecutor result = scheduler;
+
+		if (result == null) {
+			synchronized (SharedScheduler.class) {
+				result = scheduler;
+				if (result == null) {
+					result = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("http-scheduler"));
+
+					final ScheduledThreadPoolExecutor executor = result;
+					result.scheduleWithFixedDelay(new Runnable() {
+
+						@Override
+						public void run() {
+							executor.purge();
+						}
+					}, PURGE_PERIOD_SECONDS, PURGE_PERIOD_SECONDS, TimeUnit.SECONDS);
+
+					scheduler = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+}
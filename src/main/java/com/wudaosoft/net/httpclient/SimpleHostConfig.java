@@ -17,6 +17,9 @@ package com.wudaosoft.net.httpclient;
 
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.http.HttpHost;
 import org.apache.http.client.config.RequestConfig;
@@ -25,7 +28,7 @@ import org.apache.http.client.config.RequestConfig;
  * @author changsoul.wu
  *
  */
-public class SimpleHostConfig implements HostConfig{
+public class SimpleHostConfig implements ExtendedHostConfig{
 	
 	private int poolSize = 150;
 	
@@ -49,6 +52,24 @@ public class SimpleHostConfig implements HostConfig{
 	
 	private RequestConfig requestConfig;
 	
+	private HostRateLimiter rateLimiter;
+	
+	private long deadline;
+	
+	private long idleConnectionTimeout = 30000;
+	
+	private long evictionPeriod = 18000;
+	
+	private Map<HttpHost, Integer> routeMaxConnections = Collections.emptyMap();
+	
+	private Map<HttpHost, RequestConfig> routeRequestConfigs = Collections.emptyMap();
+	
+	private List<String> hostUrls = Collections.emptyList();
+	
+	private HostSelectionStrategy hostSelectionStrategy;
+
+	private String unixSocketPath;
+	
 	
 	public SimpleHostConfig(RequestConfig requestConfig) {
 		super();
@@ -153,4 +174,85 @@ public class SimpleHostConfig implements HostConfig{
 		this.requestConfig = requestConfig;
 	}
 
+	@Override
+	public HostRateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	public void setRateLimiter(HostRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	@Override
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	@Override
+	public long getIdleConnectionTimeout() {
+		return idleConnectionTimeout;
+	}
+
+	public void setIdleConnectionTimeout(long idleConnectionTimeout) {
+		this.idleConnectionTimeout = idleConnectionTimeout;
+	}
+
+	@Override
+	public long getEvictionPeriod() {
+		return evictionPeriod;
+	}
+
+	public void setEvictionPeriod(long evictionPeriod) {
+		this.evictionPeriod = evictionPeriod;
+	}
+
+	@Override
+	public Map<HttpHost, Integer> getRouteMaxConnections() {
+		return routeMaxConnections;
+	}
+
+	public void setRouteMaxConnections(Map<HttpHost, Integer> routeMaxConnections) {
+		this.routeMaxConnections = routeMaxConnections;
+	}
+
+	@Override
+	public Map<HttpHost, RequestConfig> getRouteRequestConfigs() {
+		return routeRequestConfigs;
+	}
+
+	public void setRouteRequestConfigs(Map<HttpHost, RequestConfig> routeRequestConfigs) {
+		this.routeRequestConfigs = routeRequestConfigs;
+	}
+
+	@Override
+	public List<String> getHostUrls() {
+		return hostUrls;
+	}
+
+	public void setHostUrls(List<String> hostUrls) {
+		this.hostUrls = hostUrls;
+	}
+
+	@Override
+	public HostSelectionStrategy getHostSelectionStrategy() {
+		return hostSelectionStrategy;
+	}
+
+	public void setHostSelectionStrategy(HostSelectionStrategy hostSelectionStrategy) {
+		this.hostSelectionStrategy = hostSelectionStrategy;
+	}
+
+	@Override
+	public String getUnixSocketPath() {
+		return unixSocketPath;
+	}
+
+	public void setUnixSocketPath(String unixSocketPath) {
+		this.unixSocketPath = unixSocketPath;
+	}
+
 }
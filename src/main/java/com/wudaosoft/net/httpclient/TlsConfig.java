@@ -0,0 +1,113 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.util.Args;
+
+/**
+ * TLS配置：允许的协议版本和加密套件，以及客户端会话缓存的大小和超时时间。
+ * 会话缓存属于SSLContext，同一个Request的所有连接共用，缓存中的会话可以在新建连接时恢复，省去完整握手。
+ * 会话缓存的设置不会修改调用方通过{@link Request.Builder#setSslcontext(SSLContext)}传入的SSLContext，需由调用方自行设置。
+ * <p>
+ * TLSv1.3总是使用会话票据（session ticket）恢复会话；TLSv1.2的会话票据由JVM的系统属性
+ * jdk.tls.client.enableSessionTicketExtension控制（JDK 13及以上默认开启），需在启动参数中设置。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class TlsConfig {
+
+	private String[] protocols;
+
+	private String[] cipherSuites;
+
+	private int sessionCacheSize = -1;
+
+	private int sessionTimeout = -1;
+
+	/**
+	 * @param protocols 允许的协议版本，如“TLSv1.3”、“TLSv1.2”，默认使用JVM开启的版本（不含SSL）
+	 */
+	public TlsConfig setProtocols(String... protocols) {
+		this.protocols = protocols != null && protocols.length > 0 ? protocols.clone() : null;
+		return this;
+	}
+
+	/**
+	 * @param cipherSuites 允许的加密套件，默认使用JVM开启的套件
+	 */
+	public TlsConfig setCipherSuites(String... cipherSuites) {
+		this.cipherSuites = cipherSuites != null && cipherSuites.length > 0 ? cipherSuites.clone() : null;
+		return this;
+	}
+
+	/**
+	 * @param sessionCacheSize 最多缓存的会话数，0表示不限，默认使用SSLContext的设置
+	 */
+	public TlsConfig setSessionCacheSize(int sessionCacheSize) {
+		this.sessionCacheSize = Args.notNegative(sessionCacheSize, "sessionCacheSize");
+		return this;
+	}
+
+	/**
+	 * @param sessionTimeout 缓存的会话的有效时间，单位：秒，0表示不限，默认使用SSLContext的设置
+	 */
+	public TlsConfig setSessionTimeout(int sessionTimeout) {
+		this.sessionTimeout = Args.notNegative(sessionTimeout, "sessionTimeout");
+		return this;
+	}
+
+	public String[] getProtocols() {
+		return protocols != null ? protocols.clone() : null;
+	}
+
+	public String[] getCipherSuites() {
+		return cipherSuites != null ? cipherSuites.clone() : null;
+	}
+
+	public int getSessionCacheSize() {
+		return sessionCacheSize;
+	}
+
+	public int getSessionTimeout() {
+		return sessionTimeout;
+	}
+
+	/**
+	 * 设置SSLContext的客户端会话缓存，只用于本库创建且不共用的SSLContext
+	 */
+	void applyTo(SSLContext sslContext) {
+		applySessionCache(sslContext, sessionCacheSize, sessionTimeout);
+	}
+
+	static void applySessionCache(SSLContext sslContext, int sessionCacheSize, int sessionTimeout) {
+
+		SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+
+		if (sessionContext == null)
+			return;
+
+		if (sessionCacheSize >= 0)
+			sessionContext.setSessionCacheSize(sessionCacheSize);
+
+		if (sessionTimeout >= 0)
+			sessionContext.setSessionTimeout(sessionTimeout);
+	}
+
+}
@@ -0,0 +1,134 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 统计TLS完整握手和会话恢复次数的SSLConnectionSocketFactory。
+ * 会话的创建时间早于本次握手开始时间的视为恢复的会话。
+ * 只统计最终绑定到连接上的socket（见{@link #track(HttpClientConnectionOperator)}），并行建连中被放弃的尝试不计入。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class TlsConnectionSocketFactory extends SSLConnectionSocketFactory {
+
+	private final AtomicLong fullHandshakes = new AtomicLong();
+
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+
+	/**
+	 * 已握手但尚未绑定到连接的socket，值为是否恢复的会话；被放弃的socket关闭后随GC移除
+	 */
+	private final Map<Socket, Boolean> pending = Collections.synchronizedMap(new WeakHashMap<Socket, Boolean>());
+
+	public TlsConnectionSocketFactory(SSLContext sslContext, String[] supportedProtocols, String[] supportedCipherSuites,
+			HostnameVerifier hostnameVerifier) {
+		super(sslContext, supportedProtocols, supportedCipherSuites, hostnameVerifier);
+	}
+
+	@Override
+	public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+
+		long start = System.currentTimeMillis();
+
+		Socket sslSocket = super.createLayeredSocket(socket, target, port, context);
+
+		if (sslSocket instanceof SSLSocket) {
+			SSLSession session = ((SSLSocket) sslSocket).getSession();
+
+			pending.put(sslSocket, session.getCreationTime() < start);
+		}
+
+		return sslSocket;
+	}
+
+	/**
+	 * 包装连接方式，连接建立后统计绑定到连接上的socket的握手
+	 */
+	HttpClientConnectionOperator track(final HttpClientConnectionOperator operator) {
+
+		return new HttpClientConnectionOperator() {
+
+			@Override
+			public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress,
+					int connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+				operator.connect(conn, host, localAddress, connectTimeout, socketConfig, context);
+				bound(conn);
+			}
+
+			@Override
+			public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context)
+					throws IOException {
+				operator.upgrade(conn, host, context);
+				bound(conn);
+			}
+		};
+	}
+
+	private void bound(ManagedHttpClientConnection conn) {
+
+		Socket socket = conn.getSocket();
+
+		if (socket == null)
+			return;
+
+		Boolean resumed = pending.remove(socket);
+
+		if (resumed == null)
+			return;
+
+		if (resumed) {
+			resumedHandshakes.incrementAndGet();
+		} else {
+			fullHandshakes.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return 完整握手次数
+	 */
+	public long getFullHandshakes() {
+		return fullHandshakes.get();
+	}
+
+	/**
+	 * @return 恢复会话的握手次数
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes.get();
+	}
+
+}
@@ -0,0 +1,170 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.http.util.Args;
+
+/**
+ * 令牌桶限流：按固定速率生成令牌，桶中最多积攒burst个令牌用于应对突发请求。
+ * 令牌不足时预约下一个令牌的生成时间并在锁外等待，等待中的请求按到达顺序依次放行。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class TokenBucket {
+
+	private final double permitsPerSecond;
+
+	private final double intervalNanos;
+
+	private final double maxPermits;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private double storedPermits;
+
+	private long nextFreeNanos;
+
+	/**
+	 * 最多积攒1秒的令牌
+	 *
+	 * @param permitsPerSecond 每秒生成的令牌数
+	 */
+	public TokenBucket(double permitsPerSecond) {
+		this(permitsPerSecond, Math.max(1, permitsPerSecond));
+	}
+
+	/**
+	 * @param permitsPerSecond 每秒生成的令牌数
+	 * @param burst 桶中最多积攒的令牌数
+	 */
+	public TokenBucket(double permitsPerSecond, double burst) {
+		Args.check(permitsPerSecond > 0, "permitsPerSecond must be positive");
+		Args.check(burst >= 1, "burst must be at least 1");
+
+		this.permitsPerSecond = permitsPerSecond;
+		this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+		this.maxPermits = burst;
+		this.storedPermits = burst;
+		this.nextFreeNanos = System.nanoTime();
+	}
+
+	/**
+	 * 阻塞直到获得令牌
+	 *
+	 * @throws InterruptedException
+	 */
+	public void acquire() throws InterruptedException {
+		tryAcquire(-1, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 不等待，立即返回是否获得令牌
+	 *
+	 * @return
+	 */
+	public boolean tryAcquire() {
+		return reserve(0) == 0;
+	}
+
+	/**
+	 * 在timeout内能获得令牌时等待并返回true，否则立即返回false
+	 *
+	 * @param timeout 最长等待时间，小于0表示一直等待
+	 * @param unit
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+
+		long wait = reserve(timeout < 0 ? -1 : unit.toNanos(timeout));
+
+		if (wait < 0)
+			return false;
+
+		if (wait > 0)
+			TimeUnit.NANOSECONDS.sleep(wait);
+
+		return true;
+	}
+
+	/**
+	 * @return 每秒生成的令牌数
+	 */
+	public double getPermitsPerSecond() {
+		return permitsPerSecond;
+	}
+
+	/**
+	 * 预约一个令牌
+	 *
+	 * @param timeoutNanos 最长等待时间，小于0表示不限
+	 * @return 需要等待的纳秒数，超过timeoutNanos时返回-1且不预约
+	 */
+	long reserve(long timeoutNanos) {
+
+		lock.lock();
+		try {
+			long now = System.nanoTime();
+
+			if (now > nextFreeNanos) {
+				storedPermits = Math.min(maxPermits, storedPermits + (now - nextFreeNanos) / intervalNanos);
+				nextFreeNanos = now;
+			}
+
+			// 积攒的令牌不足一个时，等到补足的部分生成为止
+			double fromStored = Math.min(1, storedPermits);
+			long next = nextFreeNanos + (long) ((1 - fromStored) * intervalNanos);
+			long wait = next - now;
+
+			if (timeoutNanos >= 0 && wait > timeoutNanos)
+				return -1;
+
+			storedPermits -= fromStored;
+			nextFreeNanos = next;
+
+			return wait;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 归还一个已预约但没有使用的令牌
+	 */
+	void refund() {
+
+		lock.lock();
+		try {
+			long ahead = nextFreeNanos - System.nanoTime();
+
+			if (ahead > 0) {
+				// 令牌已预约到将来，把预约时间提前一个间隔
+				long back = Math.min(ahead, (long) intervalNanos);
+				nextFreeNanos -= back;
+				storedPermits = Math.min(maxPermits, storedPermits + 1 - back / intervalNanos);
+			} else {
+				storedPermits = Math.min(maxPermits, storedPermits + 1);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+}
@@ -0,0 +1,463 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 基于Unix domain socket的Socket，供HttpClient的连接使用。
+ * JDK 16开始SocketChannel支持Unix domain socket，这里通过反射调用以兼容低版本的编译环境。
+ * 通道为非阻塞模式，读操作用Selector实现soTimeout。TCP相关的选项无效。
+ *
+ * @author changsoul.wu
+ *
+ */
+class UnixDomainSocket extends Socket {
+
+	private static final Method OPEN;
+
+	private static final Object UNIX;
+
+	private static final Method ADDRESS_OF;
+
+	private static final Method SHUTDOWN_INPUT;
+
+	private static final Method SHUTDOWN_OUTPUT;
+
+	static {
+		Method open = null, addressOf = null, shutdownInput = null, shutdownOutput = null;
+		Object unix = null;
+
+		try {
+			Class<?> protocolFamily = Class.forName("java.net.ProtocolFamily");
+			unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+			open = SocketChannel.class.getMethod("open", protocolFamily);
+			addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+			shutdownInput = SocketChannel.class.getMethod("shutdownInput");
+			shutdownOutput = SocketChannel.class.getMethod("shutdownOutput");
+		} catch (Exception e) {
+			open = null;
+		}
+
+		OPEN = open;
+		UNIX = unix;
+		ADDRESS_OF = addressOf;
+		SHUTDOWN_INPUT = shutdownInput;
+		SHUTDOWN_OUTPUT = shutdownOutput;
+	}
+
+	private final Object readLock = new Object();
+
+	private final Object writeLock = new Object();
+
+	private volatile SocketChannel channel;
+
+	private Selector readSelector;
+
+	private Selector writeSelector;
+
+	private volatile int soTimeout;
+
+	private volatile boolean closed;
+
+	private boolean inputShutdown;
+
+	private boolean outputShutdown;
+
+	private SocketAddress remoteAddress;
+
+	private final InputStream in = new ChannelInputStream();
+
+	private final OutputStream out = new ChannelOutputStream();
+
+	UnixDomainSocket() throws SocketException {
+		super((SocketImpl) null);
+	}
+
+	/**
+	 * @return JVM是否支持Unix domain socket（Java 16及以上）
+	 */
+	static boolean isSupported() {
+		return OPEN != null;
+	}
+
+	/**
+	 * 阻塞的AF_UNIX连接，不支持连接超时：服务端在监听时立即连上，不存在或未监听时立即失败，
+	 * 只有服务端的连接队列已满时才会阻塞。
+	 *
+	 * @param path socket文件路径
+	 */
+	void connect(String path) throws IOException {
+
+		if (!isSupported())
+			throw new SocketException("Unix domain sockets require Java 16 or later");
+
+		if (closed)
+			throw new SocketException("Socket is closed");
+
+		SocketChannel ch = null;
+
+		try {
+			SocketAddress address = (SocketAddress) invoke(ADDRESS_OF, null, path);
+			ch = (SocketChannel) invoke(OPEN, null, UNIX);
+			ch.connect(address);
+			ch.configureBlocking(false);
+
+			synchronized (this) {
+				if (closed)
+					throw new SocketException("Socket is closed");
+
+				readSelector = Selector.open();
+				ch.register(readSelector, SelectionKey.OP_READ);
+				writeSelector = Selector.open();
+				ch.register(writeSelector, SelectionKey.OP_WRITE);
+				remoteAddress = address;
+				channel = ch;
+			}
+		} catch (IOException e) {
+			closeQuietly(ch);
+			closeSelectors();
+			throw e;
+		}
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		ensureConnected();
+		return in;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		ensureConnected();
+		return out;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+
+		if (closed)
+			return;
+
+		closed = true;
+		closeQuietly(channel);
+		closeSelectors();
+	}
+
+	@Override
+	public boolean isConnected() {
+		return channel != null;
+	}
+
+	@Override
+	public boolean isBound() {
+		return channel != null;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public synchronized void shutdownInput() throws IOException {
+		ensureConnected();
+		invoke(SHUTDOWN_INPUT, channel);
+		inputShutdown = true;
+	}
+
+	@Override
+	public synchronized void shutdownOutput() throws IOException {
+		ensureConnected();
+		invoke(SHUTDOWN_OUTPUT, channel);
+		outputShutdown = true;
+	}
+
+	@Override
+	public synchronized boolean isInputShutdown() {
+		return inputShutdown;
+	}
+
+	@Override
+	public synchronized boolean isOutputShutdown() {
+		return outputShutdown;
+	}
+
+	@Override
+	public void setSoTimeout(int timeout) throws SocketException {
+		if (timeout < 0)
+			throw new IllegalArgumentException("timeout can't be negative");
+		this.soTimeout = timeout;
+	}
+
+	@Override
+	public int getSoTimeout() throws SocketException {
+		return soTimeout;
+	}
+
+	@Override
+	public void setTcpNoDelay(boolean on) throws SocketException {
+	}
+
+	@Override
+	public boolean getTcpNoDelay() throws SocketException {
+		return false;
+	}
+
+	@Override
+	public void setKeepAlive(boolean on) throws SocketException {
+	}
+
+	@Override
+	public boolean getKeepAlive() throws SocketException {
+		return false;
+	}
+
+	@Override
+	public void setReuseAddress(boolean on) throws SocketException {
+	}
+
+	@Override
+	public boolean getReuseAddress() throws SocketException {
+		return false;
+	}
+
+	@Override
+	public void setSoLinger(boolean on, int linger) throws SocketException {
+	}
+
+	@Override
+	public int getSoLinger() throws SocketException {
+		return -1;
+	}
+
+	@Override
+	public synchronized void setReceiveBufferSize(int size) throws SocketException {
+	}
+
+	@Override
+	public synchronized int getReceiveBufferSize() throws SocketException {
+		return 0;
+	}
+
+	@Override
+	public synchronized void setSendBufferSize(int size) throws SocketException {
+	}
+
+	@Override
+	public synchronized int getSendBufferSize() throws SocketException {
+		return 0;
+	}
+
+	@Override
+	public InetAddress getInetAddress() {
+		return null;
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return null;
+	}
+
+	@Override
+	public int getPort() {
+		return 0;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return -1;
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return remoteAddress;
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "UnixDomainSocket[" + remoteAddress + "]";
+	}
+
+	private void ensureConnected() throws SocketException {
+
+		if (closed)
+			throw new SocketException("Socket is closed");
+
+		if (channel == null)
+			throw new SocketException("Socket is not connected");
+	}
+
+	/**
+	 * 等待通道可读或可写，socket被其他线程关闭时抛出SocketException
+	 */
+	private void select(Selector selector, long timeout) throws IOException {
+
+		try {
+			selector.select(timeout);
+			selector.selectedKeys().clear();
+		} catch (ClosedSelectorException e) {
+			throw new SocketException("Socket closed");
+		}
+
+		if (closed)
+			throw new SocketException("Socket closed");
+	}
+
+	private synchronized void closeSelectors() {
+
+		if (readSelector != null)
+			closeQuietly(readSelector);
+
+		if (writeSelector != null)
+			closeQuietly(writeSelector);
+	}
+
+	private static void closeQuietly(SocketChannel channel) {
+
+		if (channel == null)
+			return;
+
+		try {
+			channel.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+	private static void closeQuietly(Selector selector) {
+		try {
+			selector.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args) throws IOException {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private class ChannelInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+
+			byte[] b = new byte[1];
+			int n = read(b, 0, 1);
+
+			return n < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+
+			if (len == 0)
+				return 0;
+
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+
+			synchronized (readLock) {
+
+				ensureConnected();
+
+				int timeout = soTimeout;
+				long deadline = System.currentTimeMillis() + timeout;
+
+				while (true) {
+					int n = channel.read(buffer);
+
+					if (n != 0)
+						return n;
+
+					long wait = 0;
+
+					if (timeout > 0) {
+						wait = deadline - System.currentTimeMillis();
+
+						if (wait <= 0)
+							throw new SocketTimeoutException("Read timed out");
+					}
+
+					select(readSelector, wait);
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			UnixDomainSocket.this.close();
+		}
+	}
+
+	private class ChannelOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+
+			ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+
+			synchronized (writeLock) {
+
+				ensureConnected();
+
+				while (buffer.hasRemaining()) {
+
+					if (channel.write(buffer) == 0) {
+						// 与TCP socket一样，写操作不受soTimeout限制
+						select(writeSelector, 0);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			UnixDomainSocket.this.close();
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.Args;
+
+/**
+ * 通过Unix domain socket连接，忽略目标地址，总是连接到指定的socket文件。需要Java 16及以上版本。
+ * 连接是阻塞的AF_UNIX连接，connectTimeout不起作用（本机连接在服务端监听时立即完成，未监听时立即失败）。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class UnixDomainSocketFactory implements ConnectionSocketFactory {
+
+	private final String path;
+
+	/**
+	 * @param path socket文件路径
+	 */
+	public UnixDomainSocketFactory(String path) {
+		this.path = Args.notEmpty(path, "path");
+	}
+
+	/**
+	 * @return JVM是否支持Unix domain socket
+	 */
+	public static boolean isSupported() {
+		return UnixDomainSocket.isSupported();
+	}
+
+	@Override
+	public Socket createSocket(HttpContext context) throws IOException {
+		return new UnixDomainSocket();
+	}
+
+	@Override
+	public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+			InetSocketAddress localAddress, HttpContext context) throws IOException {
+
+		UnixDomainSocket sock = socket instanceof UnixDomainSocket ? (UnixDomainSocket) socket
+				: (UnixDomainSocket) createSocket(context);
+
+		try {
+			sock.connect(path);
+		} catch (IOException e) {
+			sock.close();
+			throw e;
+		}
+
+		return sock;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+}
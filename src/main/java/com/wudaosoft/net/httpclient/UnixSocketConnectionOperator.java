@@ -0,0 +1,95 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.Lookup;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpClientConnectionOperator;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * 到指定主机的连接走Unix domain socket，不做DNS解析；https时在其上进行TLS握手。其他主机交给原来的连接方式。
+ *
+ * @author changsoul.wu
+ *
+ */
+class UnixSocketConnectionOperator implements HttpClientConnectionOperator {
+
+	private final HttpClientConnectionOperator delegate;
+
+	private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
+
+	private final HttpHost host;
+
+	private final UnixDomainSocketFactory socketFactory;
+
+	UnixSocketConnectionOperator(HttpClientConnectionOperator delegate,
+			Lookup<ConnectionSocketFactory> socketFactoryRegistry, HttpHost host, UnixDomainSocketFactory socketFactory) {
+		this.delegate = delegate;
+		this.socketFactoryRegistry = socketFactoryRegistry;
+		this.host = normalize(host);
+		this.socketFactory = socketFactory;
+	}
+
+	@Override
+	public void connect(ManagedHttpClientConnection conn, HttpHost host, InetSocketAddress localAddress,
+			int connectTimeout, SocketConfig socketConfig, HttpContext context) throws IOException {
+
+		if (!this.host.equals(normalize(host))) {
+			delegate.connect(conn, host, localAddress, connectTimeout, socketConfig, context);
+			return;
+		}
+
+		Socket sock = socketFactory.createSocket(context);
+		sock.setSoTimeout(socketConfig.getSoTimeout());
+		conn.bind(sock);
+
+		sock = socketFactory.connectSocket(connectTimeout, sock, host, null, localAddress, context);
+		conn.bind(sock);
+
+		ConnectionSocketFactory sf = socketFactoryRegistry.lookup(host.getSchemeName());
+
+		if (sf instanceof LayeredConnectionSocketFactory) {
+			sock = ((LayeredConnectionSocketFactory) sf).createLayeredSocket(sock, host.getHostName(),
+					DefaultSchemePortResolver.INSTANCE.resolve(host), context);
+			conn.bind(sock);
+		}
+	}
+
+	@Override
+	public void upgrade(ManagedHttpClientConnection conn, HttpHost host, HttpContext context) throws IOException {
+		delegate.upgrade(conn, host, context);
+	}
+
+	private static HttpHost normalize(HttpHost host) {
+		try {
+			return new HttpHost(host.getHostName(), DefaultSchemePortResolver.INSTANCE.resolve(host),
+					host.getSchemeName());
+		} catch (IOException e) {
+			return host;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpHost;
+
+/**
+ * 负载均衡中的一个上游实例，记录正在执行的请求数和耗时的指数加权平均值，供{@link HostSelectionStrategy}选择。
+ * 连续{@value #EJECT_AFTER_FAILURES}次服务端故障的实例被摘除{@value #EJECT_MILLIS}毫秒，期间不参与选择（所有实例都被摘除时除外）。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class UpstreamHost {
+
+	/**
+	 * 新耗时的权重
+	 */
+	private static final double DECAY = 0.2;
+
+	static final int EJECT_AFTER_FAILURES = 5;
+
+	static final long EJECT_MILLIS = 30000;
+
+	private final String hostUrl;
+
+	private final HttpHost host;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/**
+	 * double类型的平均耗时，以bit形式保存以便CAS更新
+	 */
+	private final AtomicLong latencyBits = new AtomicLong(Double.doubleToLongBits(0));
+
+	private final AtomicLong requestCount = new AtomicLong();
+
+	private final AtomicLong failureCount = new AtomicLong();
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	private volatile long ejectedUntil;
+
+	UpstreamHost(String hostUrl, HttpHost host) {
+		this.hostUrl = hostUrl;
+		this.host = host;
+	}
+
+	void onStart() {
+		inFlight.incrementAndGet();
+	}
+
+	/**
+	 * @param latency 耗时，单位：毫秒
+	 * @param failed 是否服务端故障，故障按平均耗时的两倍计入，使该实例被选中的机会降低
+	 */
+	void onComplete(long latency, boolean failed) {
+
+		inFlight.decrementAndGet();
+		requestCount.incrementAndGet();
+
+		if (failed) {
+			failureCount.incrementAndGet();
+
+			if (consecutiveFailures.incrementAndGet() >= EJECT_AFTER_FAILURES) {
+				consecutiveFailures.set(0);
+				ejectedUntil = System.currentTimeMillis() + EJECT_MILLIS;
+			}
+		} else {
+			consecutiveFailures.set(0);
+		}
+
+		while (true) {
+			long bits = latencyBits.get();
+			double current = Double.longBitsToDouble(bits);
+			double sample = failed ? Math.max(latency, current * 2) : latency;
+			double updated = current == 0 ? sample : current + (sample - current) * DECAY;
+
+			if (latencyBits.compareAndSet(bits, Double.doubleToLongBits(updated)))
+				return;
+		}
+	}
+
+	/**
+	 * @return 基础URL，相对URL在其后拼接
+	 */
+	public String getHostUrl() {
+		return hostUrl;
+	}
+
+	public HttpHost getHost() {
+		return host;
+	}
+
+	/**
+	 * @return 正在执行的请求数
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return 耗时的指数加权平均值，单位：毫秒，还没有请求时为0
+	 */
+	public double getLatency() {
+		return Double.longBitsToDouble(latencyBits.get());
+	}
+
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/**
+	 * @return 是否因连续故障被暂时摘除
+	 */
+	public boolean isEjected() {
+		return System.currentTimeMillis() < ejectedUntil;
+	}
+
+	@Override
+	public String toString() {
+		return hostUrl + "[inFlight=" + getInFlight() + ", latency=" + (long) getLatency() + "ms]";
+	}
+
+}
@@ -19,13 +19,18 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.xml.transform.sax.SAXSource;
 
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
 import org.apache.http.util.Args;
+import org.reactivestreams.Publisher;
 
 import com.alibaba.fastjson.JSONObject;
 import com.wudaosoft.net.utils.XmlReader;
@@ -49,6 +54,11 @@ public class WorkerBuilder {
     private boolean isAjax = false;
     private boolean isAnyHost = false;
     private int readTimeout = -1;
+    private long deadline = -1;
+    private Priority priority = Priority.NORMAL;
+    private String sessionId;
+    private long hedgingDelay = -1;
+    private int hedgingMaxExtra = 0;
     
     private Request request;
     
@@ -158,6 +168,62 @@ public class WorkerBuilder {
 		return this;
 	}
 
+	/**
+	 * 请求的截止时间，从发出请求开始计算，包括等待连接池、建立连接、TLS握手、发送请求和读取全部返回数据。
+	 * 超时后请求被中止并抛出SocketTimeoutException。单位：毫秒，设为0不限制，默认取HostConfig的截止时间
+	 * 
+	 * @param deadline the deadline to set
+	 */
+	public WorkerBuilder withDeadline(long deadline) {
+		this.deadline = Args.notNegative(deadline, "deadline");
+		return this;
+	}
+
+	/**
+	 * 请求优先级，默认NORMAL。需在Request.Builder中设置PriorityLeaseGate才生效，连接不足时高优先级的请求先获得连接。
+	 * 
+	 * @param priority the priority to set
+	 */
+	public WorkerBuilder withPriority(Priority priority) {
+		this.priority = Args.notNull(priority, "priority");
+		return this;
+	}
+
+	/**
+	 * 多客户端模式下的会话ID，相同会话ID的请求共享Cookie。
+	 * 
+	 * @param sessionId the sessionId to set
+	 */
+	public WorkerBuilder withSession(String sessionId) {
+		this.sessionId = sessionId;
+		return this;
+	}
+
+	/**
+	 * 对冲请求：请求在delay毫秒内未返回时再发出一个相同的请求，最多额外发出maxExtra个，以最先成功的结果为准。
+	 * 只对幂等请求（GET、HEAD、OPTIONS、PUT、DELETE）生效，流式请求体和写文件、输出流的请求不对冲。
+	 * 
+	 * @param delay 发出对冲请求前的等待时间，单位：毫秒
+	 * @param maxExtra 最多额外发出的请求数
+	 */
+	public WorkerBuilder withHedging(long delay, int maxExtra) {
+		this.hedgingDelay = Args.notNegative(delay, "delay");
+		this.hedgingMaxExtra = Args.notNegative(maxExtra, "maxExtra");
+		return this;
+	}
+
+	/**
+	 * 对冲请求，等待时间取目标主机最近请求耗时的P95，样本不足时不对冲。
+	 * 
+	 * @param maxExtra 最多额外发出的请求数
+	 * @see #withHedging(long, int)
+	 */
+	public WorkerBuilder withHedging(int maxExtra) {
+		this.hedgingDelay = -1;
+		this.hedgingMaxExtra = Args.notNegative(maxExtra, "maxExtra");
+		return this;
+	}
+
 	/**
 	 * @return the method
 	 */
@@ -242,6 +308,41 @@ public class WorkerBuilder {
 		return readTimeout;
 	}
 
+	/**
+	 * @return the deadline
+	 */
+	long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * @return the priority
+	 */
+	Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @return the sessionId
+	 */
+	String getSessionId() {
+		return sessionId;
+	}
+
+	/**
+	 * @return the hedgingDelay
+	 */
+	long getHedgingDelay() {
+		return hedgingDelay;
+	}
+
+	/**
+	 * @return the hedgingMaxExtra
+	 */
+	int getHedgingMaxExtra() {
+		return hedgingMaxExtra;
+	}
+
 	
 	/**
 	 * @return JSONObject
@@ -318,6 +419,25 @@ public class WorkerBuilder {
 		request.doRequest(this, new OutputStreamResponseHandler(out));
 	}
 	
+	/**
+	 * 返回数据的Reactive Streams发布者，订阅者请求数据后才发出请求，按订阅者的请求数读取返回数据。
+	 * 
+	 * @return Publisher&lt;ByteBuffer&gt;
+	 * @see ResponseBodyPublisher
+	 */
+	public Publisher<ByteBuffer> publisher() {
+		return publisher(ResponseBodyPublisher.DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * @param chunkSize 每个ByteBuffer的最大字节数
+	 * @return Publisher&lt;ByteBuffer&gt;
+	 * @see #publisher()
+	 */
+	public Publisher<ByteBuffer> publisher(int chunkSize) {
+		return new ResponseBodyPublisher(request, this, chunkSize);
+	}
+	
 	/**
 	 * @param clazz
 	 * @return JavaObject
@@ -336,4 +456,81 @@ public class WorkerBuilder {
 		return XmlReader.readFromSource(clazz, sax());
 	}
 
+	/**
+	 * @return Future&lt;JSONObject&gt;
+	 */
+	public Future<JSONObject> jsonAsync() {
+		return jsonAsync(null);
+	}
+
+	/**
+	 * @param callback
+	 * @return Future&lt;JSONObject&gt;
+	 */
+	public Future<JSONObject> jsonAsync(FutureCallback<JSONObject> callback) {
+		return request.doRequestAsync(this, new JsonResponseHandler(), callback);
+	}
+
+	/**
+	 * @return Future&lt;XmlObject&gt;
+	 */
+	public Future<XmlObject> xmlAsync() {
+		return xmlAsync(null);
+	}
+
+	/**
+	 * @param callback
+	 * @return Future&lt;XmlObject&gt;
+	 */
+	public Future<XmlObject> xmlAsync(FutureCallback<XmlObject> callback) {
+		return request.doRequestAsync(this, new XmlResponseHandler(), callback);
+	}
+
+	/**
+	 * @return Future&lt;String&gt;
+	 */
+	public Future<String> executeAsync() {
+		return executeAsync(null);
+	}
+
+	/**
+	 * @param callback
+	 * @return Future&lt;String&gt;
+	 */
+	public Future<String> executeAsync(FutureCallback<String> callback) {
+		return request.doRequestAsync(this, new StringResponseHandler(), callback);
+	}
+
+	/**
+	 * @param file 待写入的文件
+	 * @param callback
+	 * @return Future&lt;File&gt; 写入完成后的文件
+	 */
+	public Future<File> fileAsync(final File file, FutureCallback<File> callback) {
+		return request.doRequestAsync(this, new FileResponseHandler(file), callback);
+	}
+
+	/**
+	 * @param clazz
+	 * @return Future of JavaObject
+	 */
+	public <T> Future<T> javaObjectAsync(Class<? extends T> clazz) {
+		return javaObjectAsync(clazz, null);
+	}
+
+	/**
+	 * @param clazz
+	 * @param callback
+	 * @return Future of JavaObject
+	 */
+	public <T> Future<T> javaObjectAsync(final Class<? extends T> clazz, FutureCallback<T> callback) {
+		return request.submit(new Callable<T>() {
+
+			@Override
+			public T call() throws Exception {
+				return WorkerBuilder.this.<T>javaObject(clazz);
+			}
+		}, callback);
+	}
+
 }
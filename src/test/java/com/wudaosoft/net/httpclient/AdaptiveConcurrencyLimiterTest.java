@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final HttpHost HOST = new HttpHost("example.test", 80, "http");
+
+	@Test
+	public void rejectsAboveLimit() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 10);
+
+		assertTrue(limiter.tryAcquire(HOST));
+		assertTrue(limiter.tryAcquire(HOST));
+		assertFalse(limiter.tryAcquire(HOST));
+		assertEquals(2, limiter.getInFlight(HOST));
+
+		limiter.release(HOST);
+		assertTrue(limiter.tryAcquire(HOST));
+	}
+
+	@Test
+	public void increasesWhenLimitIsUsed() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 5);
+
+		limiter.tryAcquire(HOST);
+		limiter.tryAcquire(HOST);
+
+		limiter.onSuccess(HOST, 10);
+		assertEquals(5, limiter.getLimit(HOST));
+
+		// 不超过最大上限
+		limiter.onSuccess(HOST, 10);
+		assertEquals(5, limiter.getLimit(HOST));
+	}
+
+	@Test
+	public void recoversFromMinimumLimit() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 10);
+
+		// 与Request的调用顺序一致：获得许可、请求成功、释放许可
+		for (int i = 0; i < 3; i++) {
+			assertTrue(limiter.tryAcquire(HOST));
+			limiter.onSuccess(HOST, 10);
+			limiter.release(HOST);
+		}
+
+		assertEquals(3, limiter.getLimit(HOST));
+		assertEquals(0, limiter.getInFlight(HOST));
+	}
+
+	@Test
+	public void countsFinishingRequestWhenIncreasing() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 10);
+
+		limiter.tryAcquire(HOST);
+		limiter.tryAcquire(HOST);
+
+		// 另一个请求仍在执行，刚完成的请求也计入，用到了上限的一半
+		limiter.onSuccess(HOST, 10);
+		limiter.release(HOST);
+
+		assertEquals(5, limiter.getLimit(HOST));
+	}
+
+	@Test
+	public void doesNotIncreaseWhenUnderused() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 10);
+
+		limiter.tryAcquire(HOST);
+		limiter.onSuccess(HOST, 10);
+
+		assertEquals(4, limiter.getLimit(HOST));
+	}
+
+	@Test
+	public void decreasesOnDroppedRequests() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 20, 2.0);
+
+		limiter.onDropped(HOST);
+		assertEquals(9, limiter.getLimit(HOST));
+
+		for (int i = 0; i < 50; i++) {
+			limiter.onDropped(HOST);
+		}
+
+		assertEquals(2, limiter.getLimit(HOST));
+	}
+
+	@Test
+	public void decreasesOnSlowResponses() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 20, 2.0);
+
+		// 基准耗时10毫秒，并发未用到一半不增加
+		limiter.onSuccess(HOST, 10);
+		assertEquals(10, limiter.getLimit(HOST));
+
+		limiter.onSuccess(HOST, 15);
+		assertEquals(10, limiter.getLimit(HOST));
+
+		limiter.onSuccess(HOST, 30);
+		assertEquals(9, limiter.getLimit(HOST));
+	}
+
+	@Test
+	public void hostsAreIndependent() {
+
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 10);
+		HttpHost other = new HttpHost("other.test", 80, "http");
+
+		limiter.onDropped(HOST);
+
+		assertEquals(3, limiter.getLimit(HOST));
+		assertEquals(4, limiter.getLimit(other));
+	}
+
+}
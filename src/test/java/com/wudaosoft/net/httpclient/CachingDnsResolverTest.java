@@ -0,0 +1,164 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.conn.DnsResolver;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class CachingDnsResolverTest {
+
+	private static final InetAddress[] ADDRESSES = new InetAddress[] { address(10, 0, 0, 1) };
+
+	@Test
+	public void concurrentMissesResolveOnce() throws Exception {
+
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+
+		final CachingDnsResolver resolver = new CachingDnsResolver(new DnsResolver() {
+
+			@Override
+			public InetAddress[] resolve(String host) throws UnknownHostException {
+				calls.incrementAndGet();
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return ADDRESSES;
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		try {
+			List<Future<InetAddress[]>> results = new ArrayList<Future<InetAddress[]>>();
+
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<InetAddress[]>() {
+
+					@Override
+					public InetAddress[] call() throws Exception {
+						return resolver.resolve("example.test");
+					}
+				}));
+			}
+
+			Thread.sleep(200);
+			release.countDown();
+
+			for (Future<InetAddress[]> result : results) {
+				assertArrayEquals(ADDRESSES, result.get(5, TimeUnit.SECONDS));
+			}
+
+			assertEquals(1, calls.get());
+			assertEquals(1, resolver.getMissCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void failedRefreshIsNotRetriedImmediately() throws Exception {
+
+		final AtomicBoolean fail = new AtomicBoolean();
+		final AtomicInteger calls = new AtomicInteger();
+
+		CachingDnsResolver resolver = new CachingDnsResolver(new DnsResolver() {
+
+			@Override
+			public InetAddress[] resolve(String host) throws UnknownHostException {
+				calls.incrementAndGet();
+				if (fail.get())
+					throw new UnknownHostException(host);
+				return ADDRESSES;
+			}
+		}).setTtl(50).setRefreshAhead(1).setStaleTtl(60000).setRefreshRetryInterval(60000);
+
+		resolver.resolve("example.test");
+
+		fail.set(true);
+		Thread.sleep(100);
+
+		// 过期后返回旧结果并在后台刷新一次
+		assertArrayEquals(ADDRESSES, resolver.resolve("example.test"));
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (resolver.getFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals(1, resolver.getFailureCount());
+
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals(ADDRESSES, resolver.resolve("example.test"));
+		}
+
+		Thread.sleep(100);
+
+		assertEquals(2, calls.get());
+		assertEquals(1, resolver.getFailureCount());
+	}
+
+	@Test
+	public void overrideAcceptsOnlyIpAddresses() throws Exception {
+
+		CachingDnsResolver resolver = new CachingDnsResolver();
+		resolver.addOverride("example.test", "127.0.0.2", "::1");
+
+		InetAddress[] addresses = resolver.resolve("EXAMPLE.test");
+
+		assertEquals(2, addresses.length);
+		assertEquals("127.0.0.2", addresses[0].getHostAddress());
+		assertEquals("example.test", addresses[0].getHostName());
+
+		try {
+			resolver.addOverride("other.test", "localhost");
+			fail("host name accepted as override");
+		} catch (UnknownHostException expected) {
+		}
+	}
+
+	private static InetAddress address(int a, int b, int c, int d) {
+		try {
+			return InetAddress.getByAddress(new byte[] { (byte) a, (byte) b, (byte) c, (byte) d });
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
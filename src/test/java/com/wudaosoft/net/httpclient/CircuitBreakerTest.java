@@ -0,0 +1,180 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.apache.http.HttpHost;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.wudaosoft.net.httpclient.CircuitBreaker.Phase;
+import com.wudaosoft.net.httpclient.CircuitBreaker.State;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class CircuitBreakerTest {
+
+	private final HttpHost host = new HttpHost("localhost", 8080);
+
+	private CircuitBreaker breaker;
+
+	@Before
+	public void setUp() {
+		breaker = new CircuitBreaker().setMinimumCalls(4).setFailureRateThreshold(50).setOpenDuration(1)
+				.setProbeCalls(2);
+	}
+
+	@Test
+	public void opensWhenFailureRateReached() {
+
+		succeed(2);
+		assertEquals(State.CLOSED, breaker.getState(host));
+
+		fail(2);
+		assertEquals(State.OPEN, breaker.getState(host));
+	}
+
+	@Test
+	public void rejectsWhileOpen() {
+
+		breaker.setOpenDuration(60000);
+		trip();
+
+		assertNull(breaker.tryAcquire(host));
+		assertEquals(State.OPEN, breaker.getState(host));
+	}
+
+	@Test
+	public void closesAfterAllProbesSucceed() throws InterruptedException {
+
+		trip();
+		Thread.sleep(10);
+
+		Phase first = breaker.tryAcquire(host);
+		Phase second = breaker.tryAcquire(host);
+
+		assertNotNull(first);
+		assertNotNull(second);
+		assertNull(breaker.tryAcquire(host));
+		assertEquals(State.HALF_OPEN, breaker.getState(host));
+
+		breaker.onSuccess(host, first, 1);
+		assertEquals(State.HALF_OPEN, breaker.getState(host));
+
+		breaker.onSuccess(host, second, 1);
+		assertEquals(State.CLOSED, breaker.getState(host));
+	}
+
+	@Test
+	public void reopensWhenProbeFails() throws InterruptedException {
+
+		trip();
+		Thread.sleep(10);
+
+		Phase probe = breaker.tryAcquire(host);
+		breaker.onFailure(host, probe);
+
+		assertEquals(State.OPEN, breaker.getState(host));
+	}
+
+	@Test
+	public void ignoredProbeReturnsPermit() throws InterruptedException {
+
+		trip();
+		Thread.sleep(10);
+
+		Phase first = breaker.tryAcquire(host);
+		assertNotNull(breaker.tryAcquire(host));
+		assertNull(breaker.tryAcquire(host));
+
+		breaker.onIgnored(host, first);
+
+		assertNotNull(breaker.tryAcquire(host));
+		assertNull(breaker.tryAcquire(host));
+	}
+
+	@Test
+	public void lateCompletionInHalfOpenIsNotAProbe() throws InterruptedException {
+
+		Phase late = breaker.tryAcquire(host);
+		assertNotNull(late);
+
+		trip();
+		Thread.sleep(10);
+
+		Phase first = breaker.tryAcquire(host);
+		Phase second = breaker.tryAcquire(host);
+		assertEquals(State.HALF_OPEN, breaker.getState(host));
+
+		// 熔断前放行的请求在半开状态下才完成，不影响探测
+		breaker.onSuccess(host, late, 1);
+		breaker.onFailure(host, late);
+		breaker.onIgnored(host, late);
+
+		assertEquals(State.HALF_OPEN, breaker.getState(host));
+		assertNull(breaker.tryAcquire(host));
+
+		breaker.onSuccess(host, first, 1);
+		assertEquals(State.HALF_OPEN, breaker.getState(host));
+
+		breaker.onSuccess(host, second, 1);
+		assertEquals(State.CLOSED, breaker.getState(host));
+	}
+
+	@Test
+	public void lateProbeAfterCloseIsNotCounted() throws InterruptedException {
+
+		trip();
+		Thread.sleep(10);
+
+		Phase first = breaker.tryAcquire(host);
+		Phase second = breaker.tryAcquire(host);
+		breaker.onSuccess(host, first, 1);
+		breaker.onIgnored(host, second);
+
+		Phase third = breaker.tryAcquire(host);
+		breaker.onSuccess(host, third, 1);
+		assertEquals(State.CLOSED, breaker.getState(host));
+
+		// 半开时放行的请求在恢复后才失败，不计入新窗口
+		breaker.onFailure(host, second);
+		fail(1);
+		succeed(2);
+		assertEquals(State.CLOSED, breaker.getState(host));
+	}
+
+	private void trip() {
+		fail(4);
+		assertEquals(State.OPEN, breaker.getState(host));
+	}
+
+	private void succeed(int calls) {
+		for (int i = 0; i < calls; i++) {
+			breaker.onSuccess(host, breaker.tryAcquire(host), 1);
+		}
+	}
+
+	private void fail(int calls) {
+		for (int i = 0; i < calls; i++) {
+			breaker.onFailure(host, breaker.tryAcquire(host));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class HostRateLimiterTest {
+
+	@Test
+	public void pathBucketLimitsMatchingPaths() throws InterruptedException {
+
+		HostRateLimiter limiter = new HostRateLimiter(null, 0).addPathBucket("/pay/*", new TokenBucket(0.001, 1));
+
+		assertTrue(limiter.acquire("/pay/order"));
+		assertFalse(limiter.acquire("/pay/refund"));
+		assertTrue(limiter.acquire("/query"));
+	}
+
+	@Test
+	public void globalBucketLimitsAllPaths() {
+
+		HostRateLimiter limiter = new HostRateLimiter(new TokenBucket(0.001, 2), 0);
+
+		assertTrue(limiter.tryAcquire("/a"));
+		assertTrue(limiter.tryAcquire("/b"));
+		assertFalse(limiter.tryAcquire("/c"));
+	}
+
+	@Test
+	public void globalRejectionRefundsPathToken() throws InterruptedException {
+
+		TokenBucket payBucket = new TokenBucket(0.001, 1);
+		HostRateLimiter limiter = new HostRateLimiter(new TokenBucket(0.001, 1), 0).addPathBucket("/pay/*",
+				payBucket);
+
+		assertTrue(limiter.acquire("/query"));
+		assertFalse(limiter.acquire("/pay/order"));
+		assertFalse(limiter.tryAcquire("/pay/order"));
+
+		// 全局令牌不足时路径令牌已归还
+		assertTrue(payBucket.tryAcquire());
+	}
+
+	@Test
+	public void waitsForRefillWithinTimeout() throws InterruptedException {
+
+		HostRateLimiter limiter = new HostRateLimiter(new TokenBucket(100, 1), 1000).addPathBucket("/pay/*",
+				new TokenBucket(100, 1));
+
+		assertTrue(limiter.acquire("/pay/order"));
+		assertTrue(limiter.acquire("/pay/order"));
+		assertFalse(limiter.acquire("/pay/order", 0));
+	}
+}
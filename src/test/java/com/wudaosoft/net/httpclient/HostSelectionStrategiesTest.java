@@ -0,0 +1,166 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class HostSelectionStrategiesTest {
+
+	private final UpstreamHost a = upstream("a.test");
+
+	private final UpstreamHost b = upstream("b.test");
+
+	private final UpstreamHost c = upstream("c.test");
+
+	private final List<UpstreamHost> hosts = Arrays.asList(a, b, c);
+
+	@Test
+	public void roundRobinCyclesThroughHosts() {
+
+		HostSelectionStrategy strategy = HostSelectionStrategies.roundRobin();
+		List<UpstreamHost> selected = new ArrayList<UpstreamHost>();
+
+		for (int i = 0; i < 6; i++) {
+			selected.add(strategy.select(hosts));
+		}
+
+		assertEquals(Arrays.asList(a, b, c, a, b, c), selected);
+	}
+
+	@Test
+	public void leastInFlightPicksIdlestHost() {
+
+		HostSelectionStrategy strategy = HostSelectionStrategies.leastInFlight();
+
+		a.onStart();
+		a.onStart();
+		c.onStart();
+
+		for (int i = 0; i < 3; i++) {
+			assertSame(b, strategy.select(hosts));
+		}
+
+		b.onStart();
+		b.onStart();
+
+		assertSame(c, strategy.select(hosts));
+	}
+
+	@Test
+	public void powerOfTwoChoicesPrefersCheaperHost() {
+
+		HostSelectionStrategy strategy = HostSelectionStrategies.powerOfTwoChoices();
+
+		a.onStart();
+		a.onComplete(100, false);
+		b.onStart();
+		b.onComplete(10, false);
+		c.onStart();
+		c.onComplete(1000, false);
+
+		Map<UpstreamHost, Integer> counts = new HashMap<UpstreamHost, Integer>();
+
+		for (int i = 0; i < 3000; i++) {
+			UpstreamHost host = strategy.select(hosts);
+			counts.put(host, counts.containsKey(host) ? counts.get(host) + 1 : 1);
+		}
+
+		// 两两比较，最慢的实例永远不会被选中，最快的实例在2/3的比较中出现
+		assertFalse(counts.containsKey(c));
+		assertTrue(counts.get(b) > counts.get(a));
+
+		assertSame(b, strategy.select(Arrays.asList(a, b)));
+		assertSame(a, strategy.select(Arrays.asList(a)));
+	}
+
+	@Test
+	public void ejectedHostsAreSkipped() {
+
+		HostSelectionStrategy strategy = HostSelectionStrategies.roundRobin();
+
+		for (int i = 0; i < UpstreamHost.EJECT_AFTER_FAILURES; i++) {
+			b.onStart();
+			b.onComplete(10, true);
+		}
+
+		assertTrue(b.isEjected());
+
+		for (int i = 0; i < 10; i++) {
+			assertFalse(HostSelectionStrategies.selectAvailable(strategy, hosts, null) == b);
+		}
+	}
+
+	@Test
+	public void successResetsConsecutiveFailures() {
+
+		for (int i = 0; i < UpstreamHost.EJECT_AFTER_FAILURES * 2; i++) {
+			b.onStart();
+			b.onComplete(10, i % 2 == 0);
+		}
+
+		assertFalse(b.isEjected());
+	}
+
+	@Test
+	public void openCircuitsAreSkipped() {
+
+		CircuitBreaker circuitBreaker = new CircuitBreaker().setMinimumCalls(1).setOpenDuration(60000);
+		HostSelectionStrategy strategy = HostSelectionStrategies.roundRobin();
+
+		circuitBreaker.onFailure(a.getHost(), circuitBreaker.tryAcquire(a.getHost()));
+
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState(a.getHost()));
+
+		for (int i = 0; i < 10; i++) {
+			assertFalse(HostSelectionStrategies.selectAvailable(strategy, hosts, circuitBreaker) == a);
+		}
+	}
+
+	@Test
+	public void allUnavailableFallsBackToAllHosts() {
+
+		CircuitBreaker circuitBreaker = new CircuitBreaker().setMinimumCalls(1).setOpenDuration(60000);
+		HostSelectionStrategy strategy = HostSelectionStrategies.roundRobin();
+
+		for (UpstreamHost host : hosts) {
+			circuitBreaker.onFailure(host.getHost(), circuitBreaker.tryAcquire(host.getHost()));
+		}
+
+		assertSame(a, HostSelectionStrategies.selectAvailable(strategy, hosts, circuitBreaker));
+		assertSame(b, HostSelectionStrategies.selectAvailable(strategy, hosts, circuitBreaker));
+	}
+
+	private static UpstreamHost upstream(String name) {
+		return new UpstreamHost("http://" + name, new HttpHost(name, 80, "http"));
+	}
+
+}
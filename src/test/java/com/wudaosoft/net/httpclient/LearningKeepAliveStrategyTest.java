@@ -0,0 +1,156 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpCoreContext;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class LearningKeepAliveStrategyTest {
+
+	private final HttpHost host = new HttpHost("example.com", 80);
+
+	private LearningKeepAliveStrategy strategy;
+
+	private HttpRequestRetryHandler retryHandler;
+
+	@Before
+	public void setUp() {
+
+		strategy = new LearningKeepAliveStrategy().setDefaultKeepAlive(30000).setMinKeepAlive(1000)
+				.setSafetyRatio(0.5);
+
+		retryHandler = strategy.observe(new HttpRequestRetryHandler() {
+
+			@Override
+			public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+				return false;
+			}
+		});
+	}
+
+	@Test
+	public void learnsFromStaleConnection() {
+
+		assertEquals(30000, strategy.getKeepAlive(host));
+
+		staleAfter(10000, new NoHttpResponseException("The target server failed to respond"));
+
+		assertEquals(5000, strategy.getKeepAlive(host));
+		assertEquals(5000, strategy.getKeepAliveDuration(response(null), context()));
+
+		// Keep-Alive头更小时以头为准
+		assertEquals(2000, strategy.getKeepAliveDuration(response("timeout=2"), context()));
+		assertEquals(5000, strategy.getKeepAliveDuration(response("timeout=60"), context()));
+
+		// 更长的空闲时间不会增加保持时间
+		staleAfter(20000, new NoHttpResponseException("The target server failed to respond"));
+
+		assertEquals(5000, strategy.getKeepAlive(host));
+	}
+
+	@Test
+	public void appliesSafetyRatioAndMinimum() {
+
+		staleAfter(4000, new NoHttpResponseException("The target server failed to respond"));
+
+		assertEquals(2000, strategy.getKeepAlive(host));
+
+		staleAfter(100, new NoHttpResponseException("The target server failed to respond"));
+
+		assertEquals(1000, strategy.getKeepAlive(host));
+	}
+
+	@Test
+	public void ignoresOtherFailures() {
+
+		// 读超时说明连接仍然可用
+		staleAfter(10000, new SocketTimeoutException("Read timed out"));
+
+		// 复用前没有记录空闲时间（新建的连接）
+		retryHandler.retryRequest(new NoHttpResponseException("The target server failed to respond"), 1, context());
+
+		assertEquals(30000, strategy.getKeepAlive(host));
+	}
+
+	@Test
+	public void relearnsAfterInterval() throws Exception {
+
+		strategy.setRelearnInterval(50);
+
+		staleAfter(16000, new NoHttpResponseException("The target server failed to respond"));
+
+		assertEquals(8000, strategy.getKeepAlive(host));
+
+		Thread.sleep(100);
+		assertEquals(10000, strategy.getKeepAlive(host));
+
+		Thread.sleep(100);
+		assertEquals(12500, strategy.getKeepAlive(host));
+
+		// 不超过默认值
+		for (int i = 0; i < 10; i++) {
+			Thread.sleep(60);
+			strategy.getKeepAlive(host);
+		}
+
+		assertEquals(30000, strategy.getKeepAlive(host));
+	}
+
+	private void staleAfter(long idleTime, IOException exception) {
+
+		HttpContext context = context();
+		context.setAttribute(LearningKeepAliveStrategy.IDLE_TIME, idleTime);
+
+		retryHandler.retryRequest(exception, 1, context);
+	}
+
+	private HttpContext context() {
+
+		HttpContext context = HttpClientContext.create();
+		context.setAttribute(HttpCoreContext.HTTP_TARGET_HOST, host);
+
+		return context;
+	}
+
+	private static HttpResponse response(String keepAlive) {
+
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+
+		if (keepAlive != null)
+			response.addHeader("Keep-Alive", keepAlive);
+
+		return response;
+	}
+
+}
@@ -0,0 +1,196 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class ParallelConnectionOperatorTest {
+
+	private static final InetAddress V4_1 = address("10.0.0.1");
+
+	private static final InetAddress V4_2 = address("10.0.0.2");
+
+	private static final InetAddress V4_3 = address("10.0.0.3");
+
+	private static final InetAddress V6_1 = address("2001:db8::1");
+
+	private static final InetAddress V6_2 = address("2001:db8::2");
+
+	@Test
+	public void interleaveStartsWithFirstFamily() {
+		assertArrayEquals(new InetAddress[] { V6_1, V4_1, V6_2, V4_2 },
+				ParallelConnectionOperator.interleave(new InetAddress[] { V6_1, V6_2, V4_1, V4_2 }));
+
+		assertArrayEquals(new InetAddress[] { V4_1, V6_1, V4_2, V6_2 },
+				ParallelConnectionOperator.interleave(new InetAddress[] { V4_1, V4_2, V6_1, V6_2 }));
+	}
+
+	@Test
+	public void interleaveAppendsRemainderInOrder() {
+		assertArrayEquals(new InetAddress[] { V4_1, V6_1, V4_2, V4_3 },
+				ParallelConnectionOperator.interleave(new InetAddress[] { V4_1, V4_2, V4_3, V6_1 }));
+
+		assertArrayEquals(new InetAddress[] { V6_1, V4_1, V6_2 },
+				ParallelConnectionOperator.interleave(new InetAddress[] { V6_1, V6_2, V4_1 }));
+	}
+
+	@Test
+	public void interleaveKeepsSingleFamily() {
+		InetAddress[] addresses = new InetAddress[] { V4_2, V4_1, V4_3 };
+
+		assertArrayEquals(addresses, ParallelConnectionOperator.interleave(addresses));
+		assertArrayEquals(new InetAddress[] { V6_1 }, ParallelConnectionOperator.interleave(new InetAddress[] { V6_1 }));
+	}
+
+	@Test
+	public void shutdownAbortsRunningRace() throws Exception {
+
+		final List<HangingSocket> sockets = new CopyOnWriteArrayList<HangingSocket>();
+
+		// 连接一直阻塞到socket被关闭
+		ConnectionSocketFactory hanging = new ConnectionSocketFactory() {
+
+			@Override
+			public Socket createSocket(HttpContext context) throws IOException {
+				HangingSocket socket = new HangingSocket();
+				sockets.add(socket);
+				return socket;
+			}
+
+			@Override
+			public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+					InetSocketAddress localAddress, HttpContext context) throws IOException {
+				((HangingSocket) sock).await();
+				throw new IOException("Socket closed");
+			}
+		};
+
+		DnsResolver resolver = new DnsResolver() {
+
+			@Override
+			public InetAddress[] resolve(String host) throws UnknownHostException {
+				return new InetAddress[] { V4_1, V6_1 };
+			}
+		};
+
+		final ParallelConnectionOperator operator = new ParallelConnectionOperator(
+				RegistryBuilder.<ConnectionSocketFactory>create().register("http", hanging).build(), resolver, 50);
+		final HttpHost host = new HttpHost("example.test", 80, "http");
+		final ManagedHttpClientConnection conn = ManagedHttpClientConnectionFactory.INSTANCE
+				.create(new HttpRoute(host), ConnectionConfig.DEFAULT);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			Future<Void> connect = executor.submit(new Callable<Void>() {
+
+				@Override
+				public Void call() throws Exception {
+					operator.connect(conn, host, null, 60000, SocketConfig.DEFAULT, new BasicHttpContext());
+					return null;
+				}
+			});
+
+			long deadline = System.currentTimeMillis() + 5000;
+			while (sockets.size() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+
+			assertEquals(2, sockets.size());
+
+			long start = System.currentTimeMillis();
+			conn.shutdown();
+
+			try {
+				connect.get(5, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+
+			assertTrue(System.currentTimeMillis() - start < 2000);
+
+			for (HangingSocket socket : sockets) {
+				assertTrue(socket.isClosed());
+			}
+		} finally {
+			executor.shutdownNow();
+			operator.shutdown();
+		}
+	}
+
+		private static InetAddress address(String literal) {
+		try {
+			return InetAddress.getByName(literal);
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class HangingSocket extends Socket {
+
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		void await() throws IOException {
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			}
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			closed.countDown();
+			super.close();
+		}
+	}
+
+}
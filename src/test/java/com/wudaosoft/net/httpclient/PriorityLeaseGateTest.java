@@ -0,0 +1,142 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpHost;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class PriorityLeaseGateTest {
+
+	private static final HttpHost HOST = new HttpHost("example.test", 80, "http");
+
+	private final PriorityLeaseGate gate = new PriorityLeaseGate();
+
+	@Test
+	public void higherPriorityIsServedFirst() throws Exception {
+
+		assertTrue(gate.acquire(HOST, 1, Priority.NORMAL, 0));
+
+		List<Priority> order = new CopyOnWriteArrayList<Priority>();
+		CountDownLatch done = new CountDownLatch(3);
+
+		// 先排队的低优先级请求也要让给后来的高优先级请求
+		startWaiter(Priority.LOW, order, done);
+		awaitWaiting(1);
+		startWaiter(Priority.NORMAL, order, done);
+		awaitWaiting(2);
+		startWaiter(Priority.HIGH, order, done);
+		awaitWaiting(3);
+
+		gate.release(HOST);
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Priority.HIGH, order.get(0));
+		assertEquals(Priority.NORMAL, order.get(1));
+		assertEquals(Priority.LOW, order.get(2));
+		assertEquals(0, gate.getLeased(HOST));
+	}
+
+	@Test
+	public void acquireTimesOut() throws Exception {
+
+		assertTrue(gate.acquire(HOST, 1, Priority.NORMAL, 0));
+
+		long start = System.currentTimeMillis();
+
+		assertFalse(gate.acquire(HOST, 1, Priority.HIGH, 100));
+		assertTrue(System.currentTimeMillis() - start >= 90);
+
+		assertEquals(1, gate.getLeased(HOST));
+		assertEquals(0, gate.getWaitingCount(HOST));
+
+		InstrumentedConnectionManager.LeaseStats.Sample sample = gate.drainLeaseStats(HOST);
+
+		assertEquals(2, sample.count);
+		assertEquals(1, sample.failures);
+
+		gate.release(HOST);
+		assertTrue(gate.acquire(HOST, 1, Priority.LOW, 100));
+	}
+
+	@Test
+	public void reservedConnectionsAreKeptForHigherPriority() throws Exception {
+
+		gate.setReserved(Priority.HIGH, 1);
+
+		assertTrue(gate.acquire(HOST, 2, Priority.NORMAL, 0));
+		assertFalse(gate.acquire(HOST, 2, Priority.NORMAL, 50));
+		assertTrue(gate.acquire(HOST, 2, Priority.HIGH, 50));
+		assertEquals(2, gate.getLeased(HOST));
+	}
+
+	@Test
+	public void defaultPortSharesQueue() throws Exception {
+
+		assertTrue(gate.acquire(new HttpHost("example.test", -1, "http"), 1, Priority.NORMAL, 0));
+		assertFalse(gate.acquire(HOST, 1, Priority.NORMAL, 50));
+
+		gate.release(new HttpHost("example.test", -1, "http"));
+		assertEquals(0, gate.getLeased(HOST));
+	}
+
+	private void startWaiter(final Priority priority, final List<Priority> order, final CountDownLatch done) {
+
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					if (gate.acquire(HOST, 1, priority, 5000)) {
+						order.add(priority);
+						gate.release(HOST);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			}
+		});
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void awaitWaiting(int count) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + 5000;
+
+		while (gate.getWaitingCount(HOST) < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+
+		assertEquals(count, gate.getWaitingCount(HOST));
+	}
+
+}
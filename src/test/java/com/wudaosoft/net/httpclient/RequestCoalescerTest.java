@@ -0,0 +1,194 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class RequestCoalescerTest {
+
+	private RequestCoalescer coalescer;
+
+	private ExecutorService executor;
+
+	private CountDownLatch release;
+
+	private AtomicInteger calls;
+
+	@Before
+	public void setUp() {
+		coalescer = new RequestCoalescer();
+		executor = Executors.newCachedThreadPool();
+		release = new CountDownLatch(1);
+		calls = new AtomicInteger();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void followerSharesLeaderResult() throws Exception {
+
+		Future<String> leader = submit("key", 0, blockingTask("result"));
+		awaitInFlight();
+
+		Future<String> follower = submit("key", 0, blockingTask("other"));
+		awaitHits(1);
+
+		release.countDown();
+
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals("result", follower.get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+		assertEquals(1, coalescer.getMissCount());
+		assertEquals(0, coalescer.getInFlightCount());
+	}
+
+	@Test
+	public void followerSharesLeaderFailure() throws Exception {
+
+		final IOException error = new IOException("failed");
+
+		submit("key", 0, new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				release.await();
+				throw error;
+			}
+		});
+		awaitInFlight();
+
+		Future<String> follower = submit("key", 0, blockingTask("other"));
+		awaitHits(1);
+
+		release.countDown();
+
+		try {
+			follower.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(error, e.getCause());
+		}
+	}
+
+	@Test
+	public void differentKeysAreNotCoalesced() throws Exception {
+
+		Future<String> first = submit("a", 0, blockingTask("a"));
+		Future<String> second = submit("b", 0, blockingTask("b"));
+
+		release.countDown();
+
+		assertEquals("a", first.get(5, TimeUnit.SECONDS));
+		assertEquals("b", second.get(5, TimeUnit.SECONDS));
+		assertEquals(2, calls.get());
+		assertEquals(0, coalescer.getHitCount());
+	}
+
+	@Test
+	public void followerStopsWaitingAtDeadline() throws Exception {
+
+		Future<String> leader = submit("key", 0, blockingTask("result"));
+		awaitInFlight();
+
+		long start = System.currentTimeMillis();
+
+		try {
+			coalescer.execute("key", start + 100, blockingTask("other"));
+			fail();
+		} catch (SocketTimeoutException e) {
+			long waited = System.currentTimeMillis() - start;
+			assertTrue("waited " + waited + "ms", waited >= 90 && waited < 5000);
+		}
+
+		// 跟随者超时不影响正在执行的请求
+		release.countDown();
+		assertEquals("result", leader.get(5, TimeUnit.SECONDS));
+		assertEquals(1, calls.get());
+	}
+
+	@Test
+	public void followerWithExpiredDeadlineFailsImmediately() throws Exception {
+
+		submit("key", 0, blockingTask("result"));
+		awaitInFlight();
+
+		try {
+			coalescer.execute("key", System.currentTimeMillis() - 1, blockingTask("other"));
+			fail();
+		} catch (SocketTimeoutException expected) {
+		}
+	}
+
+	private Callable<String> blockingTask(final String result) {
+		return new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				calls.incrementAndGet();
+				release.await();
+				return result;
+			}
+		};
+	}
+
+	private Future<String> submit(final String key, final long deadlineAt, final Callable<String> task) {
+		return executor.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return coalescer.execute(key, deadlineAt, task);
+			}
+		});
+	}
+
+	private void awaitInFlight() throws InterruptedException {
+		while (coalescer.getInFlightCount() == 0) {
+			Thread.sleep(1);
+		}
+	}
+
+	private void awaitHits(long hits) throws InterruptedException {
+		while (coalescer.getHitCount() < hits) {
+			Thread.sleep(1);
+		}
+	}
+}
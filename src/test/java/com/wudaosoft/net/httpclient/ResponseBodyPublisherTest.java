@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class ResponseBodyPublisherTest {
+
+	private ServerSocket server;
+
+	private Request request;
+
+	@Before
+	public void setUp() throws Exception {
+
+		server = new ServerSocket(0);
+
+		// 返回1MB的响应体，只发送第一段后保持连接
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Socket socket = server.accept();
+						InputStream in = socket.getInputStream();
+						byte[] buff = new byte[4096];
+						in.read(buff);
+
+						OutputStream out = socket.getOutputStream();
+						out.write("HTTP/1.1 200 OK\r\nContent-Length: 1048576\r\n\r\n".getBytes("US-ASCII"));
+						out.write(new byte[8192]);
+						out.flush();
+					}
+				} catch (IOException ignore) {
+					// 服务端已关闭
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+
+		request = Request.custom()
+				.setHostConfig(HostConfigBuilder.create("http://127.0.0.1:" + server.getLocalPort()).build()).build();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		request.shutdown();
+		server.close();
+	}
+
+	@Test
+	public void nullSubscriberThrowsNullPointerException() {
+		try {
+			request.get("/").publisher().subscribe(null);
+			fail("Rule 1.9 requires a NullPointerException");
+		} catch (NullPointerException expected) {
+		}
+	}
+
+	@Test
+	public void deadlineWakesWorkerWaitingForDemand() throws Exception {
+
+		Publisher<ByteBuffer> publisher = request.get("/").withDeadline(500).publisher(1024);
+
+		final AtomicInteger chunks = new AtomicInteger();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		publisher.subscribe(new Subscriber<ByteBuffer>() {
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				// 只请求一段，之后读取线程一直等待请求数
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(ByteBuffer t) {
+				chunks.incrementAndGet();
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				error.set(t);
+				done.countDown();
+			}
+
+			@Override
+			public void onComplete() {
+				done.countDown();
+			}
+		});
+
+		assertTrue("Worker was not woken by the deadline", done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, chunks.get());
+		assertTrue(String.valueOf(error.get()), error.get() instanceof SocketTimeoutException);
+	}
+
+}
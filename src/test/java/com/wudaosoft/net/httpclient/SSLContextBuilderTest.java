@@ -0,0 +1,133 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.KeyStore;
+
+import javax.net.ssl.SSLContext;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class SSLContextBuilderTest {
+
+	private File storeFile;
+
+	private byte[] store;
+
+	@Before
+	public void setUp() throws Exception {
+
+		SSLContextBuilder.clearCache();
+
+		KeyStore ks = KeyStore.getInstance(KeyStore.getDefaultType());
+		ks.load(null, null);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ks.store(out, "changeit".toCharArray());
+		store = out.toByteArray();
+
+		storeFile = File.createTempFile("trust", ".ks");
+		write(store);
+		storeFile.setLastModified(1500000000000L);
+	}
+
+	@After
+	public void tearDown() {
+		SSLContextBuilder.clearCache();
+		storeFile.delete();
+	}
+
+	@Test
+	public void returnsCachedContext() throws Exception {
+
+		SSLContext first = builder("changeit").buildTrustMaterial();
+
+		assertSame(first, builder("changeit").buildTrustMaterial());
+		assertEquals(1, SSLContextBuilder.cacheSize());
+
+		// 密码不同时不共用（没有密码时加载信任库不校验完整性）
+		assertNotSame(first, builder(null).buildTrustMaterial());
+		assertNotSame(first, builder("changeit").setCached(false).buildTrustMaterial());
+	}
+
+	@Test
+	public void reloadsWhenModified() throws Exception {
+
+		SSLContext first = builder("changeit").buildTrustMaterial();
+
+		storeFile.setLastModified(1600000000000L);
+
+		SSLContext reloaded = builder("changeit").buildTrustMaterial();
+
+		assertNotSame(first, reloaded);
+		assertSame(reloaded, builder("changeit").buildTrustMaterial());
+	}
+
+	@Test
+	public void reloadsWhenSizeChanges() throws Exception {
+
+		SSLContext first = builder("changeit").buildTrustMaterial();
+
+		// 修改时间不变，只有大小变化（证书库之后的多余字节不影响加载）
+		byte[] larger = new byte[store.length + 16];
+		System.arraycopy(store, 0, larger, 0, store.length);
+		write(larger);
+		storeFile.setLastModified(1500000000000L);
+
+		assertNotSame(first, builder("changeit").buildTrustMaterial());
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+
+		SSLContext first = builder("changeit").buildTrustMaterial();
+
+		for (int i = 0; i < SSLContextBuilder.MAX_CACHE_SIZE; i++) {
+			builder("changeit").setSessionCacheSize(i + 1).buildTrustMaterial();
+		}
+
+		assertEquals(SSLContextBuilder.MAX_CACHE_SIZE, SSLContextBuilder.cacheSize());
+		assertNotSame(first, builder("changeit").buildTrustMaterial());
+	}
+
+	private SSLContextBuilder builder(String password) throws IOException {
+		return new SSLContextBuilder().setCert(storeFile.toURI().toURL()).setPassword(password);
+	}
+
+	private void write(byte[] data) throws IOException {
+		FileOutputStream out = new FileOutputStream(storeFile);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+
+}
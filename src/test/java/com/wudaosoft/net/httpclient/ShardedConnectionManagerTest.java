@@ -0,0 +1,139 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 借出的连接不建立socket，只测试分片的选择
+ *
+ * @author changsoul.wu
+ *
+ */
+public class ShardedConnectionManagerTest {
+
+	private static final HttpRoute ROUTE = new HttpRoute(new HttpHost("example.test", 80, "http"));
+
+	private final AtomicInteger statsCalls = new AtomicInteger();
+
+	private ShardedConnectionManager manager;
+
+	@Before
+	public void setUp() {
+
+		List<PoolingHttpClientConnectionManager> shards = new ArrayList<PoolingHttpClientConnectionManager>();
+
+		for (int i = 0; i < 4; i++) {
+			shards.add(new PoolingHttpClientConnectionManager() {
+
+				@Override
+				public PoolStats getStats(HttpRoute route) {
+					statsCalls.incrementAndGet();
+					return super.getStats(route);
+				}
+			});
+		}
+
+		manager = new ShardedConnectionManager(shards);
+		manager.setMaxTotal(100);
+		manager.setMaxPerRoute(ROUTE, 4);
+	}
+
+	@After
+	public void tearDown() {
+		manager.shutdown();
+	}
+
+	@Test
+	public void leaseDoesNotReadShardStats() throws Exception {
+
+		// 线程数不超过连接数，不需要在分片上等待，选择分片只用计数
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<Void>() {
+
+					@Override
+					public Void call() throws Exception {
+						for (int j = 0; j < 500; j++) {
+							HttpClientConnection conn = manager.requestConnection(ROUTE, null).get(5,
+									TimeUnit.SECONDS);
+							manager.releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+						}
+						return null;
+					}
+				}));
+			}
+
+			for (Future<Void> result : results) {
+				result.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(0, statsCalls.get());
+		assertEquals(0, manager.getStats(ROUTE).getLeased());
+	}
+
+	@Test
+	public void fullHomeShardSpillsToOtherShards() throws Exception {
+
+		List<HttpClientConnection> conns = new ArrayList<HttpClientConnection>();
+
+		// 每个分片1个连接，同一线程的home分片满了以后从其他分片获取，不等待
+		for (int i = 0; i < 4; i++) {
+			conns.add(manager.requestConnection(ROUTE, null).get(20, TimeUnit.MILLISECONDS));
+		}
+
+		assertEquals(4, manager.getStats(ROUTE).getLeased());
+
+		try {
+			manager.requestConnection(ROUTE, null).get(100, TimeUnit.MILLISECONDS);
+			fail("Pool is full");
+		} catch (ConnectionPoolTimeoutException expected) {
+		}
+
+		manager.releaseConnection(conns.remove(0), null, 0, TimeUnit.MILLISECONDS);
+
+		assertNotNull(manager.requestConnection(ROUTE, null).get(200, TimeUnit.MILLISECONDS));
+	}
+
+}
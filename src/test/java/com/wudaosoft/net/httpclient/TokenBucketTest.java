@@ -0,0 +1,77 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author changsoul.wu
+ *
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void burstThenReject() {
+
+		// 每1000秒一个令牌，测试期间不会生成新令牌
+		TokenBucket bucket = new TokenBucket(0.001, 2);
+
+		assertTrue(bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	public void rejectsWhenWaitExceedsTimeout() throws InterruptedException {
+
+		TokenBucket bucket = new TokenBucket(0.001, 1);
+
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void refillsAtConfiguredRate() throws InterruptedException {
+
+		TokenBucket bucket = new TokenBucket(100, 1);
+
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+
+		long start = System.nanoTime();
+		assertTrue(bucket.tryAcquire(1, TimeUnit.SECONDS));
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertTrue("waited " + waited + "ms", waited >= 5 && waited < 500);
+	}
+
+	@Test
+	public void refundReturnsToken() {
+
+		TokenBucket bucket = new TokenBucket(0.001, 1);
+
+		assertTrue(bucket.reserve(0) == 0);
+		bucket.refund();
+
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+	}
+}
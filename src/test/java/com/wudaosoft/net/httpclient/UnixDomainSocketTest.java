@@ -0,0 +1,214 @@
+/**
+ *    Copyright 2009-2018 Wudao Software Studio(wudaosoft.com)
+ * 
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ * 
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.wudaosoft.net.httpclient;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * 需要Java 16及以上版本，低版本时跳过。服务端通过反射创建，以便在低版本的编译环境中编译。
+ *
+ * @author changsoul.wu
+ *
+ */
+public class UnixDomainSocketTest {
+
+	private File socketFile;
+
+	private ServerSocketChannel server;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+
+		Assume.assumeTrue(UnixDomainSocketFactory.isSupported());
+
+		socketFile = File.createTempFile("uds", ".sock");
+		socketFile.delete();
+
+		Object unix = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+		Object address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null,
+				socketFile.getPath());
+
+		server = (ServerSocketChannel) ServerSocketChannel.class
+				.getMethod("open", Class.forName("java.net.ProtocolFamily")).invoke(null, unix);
+		server.bind((SocketAddress) address);
+
+		executor = Executors.newCachedThreadPool();
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						final SocketChannel channel = server.accept();
+
+						executor.execute(new Runnable() {
+
+							@Override
+							public void run() {
+								serve(channel);
+							}
+						});
+					}
+				} catch (IOException ignore) {
+					// 服务端已关闭
+				}
+			}
+		});
+	}
+
+	@After
+	public void tearDown() throws Exception {
+
+		if (server != null)
+			server.close();
+
+		if (executor != null)
+			executor.shutdownNow();
+
+		if (socketFile != null)
+			socketFile.delete();
+	}
+
+	@Test
+	public void requestRoundTrip() throws Exception {
+
+		Request request = Request.custom().setHostConfig(
+				HostConfigBuilder.create("http://sidecar.invalid").setUnixSocketPath(socketFile.getPath()).build())
+				.build();
+
+		try {
+			assertEquals("path=/hello", request.get("/hello").execute());
+			// 复用同一个连接
+			assertEquals("path=/again", request.get("/again").execute());
+		} finally {
+			request.shutdown();
+		}
+	}
+
+	@Test
+	public void readTimesOut() throws Exception {
+
+		UnixDomainSocket socket = new UnixDomainSocket();
+
+		try {
+			socket.connect(socketFile.getPath());
+			socket.setSoTimeout(200);
+
+			long start = System.currentTimeMillis();
+
+			try {
+				socket.getInputStream().read();
+				fail("Server sends nothing until it gets a request");
+			} catch (SocketTimeoutException expected) {
+			}
+
+			long elapsed = System.currentTimeMillis() - start;
+
+			assertTrue(elapsed >= 150 && elapsed < 2000);
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void closeUnblocksRead() throws Exception {
+
+		final UnixDomainSocket socket = new UnixDomainSocket();
+		socket.connect(socketFile.getPath());
+
+		Future<Integer> read = executor.submit(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				try {
+					return socket.getInputStream().read();
+				} catch (IOException e) {
+					return -2;
+				}
+			}
+		});
+
+		Thread.sleep(200);
+		assertTrue(!read.isDone());
+
+		socket.close();
+
+		int result = read.get(2, TimeUnit.SECONDS);
+
+		assertTrue(result < 0);
+		assertTrue(socket.isClosed());
+	}
+
+	/**
+	 * 简单的HTTP/1.1服务端，返回请求的路径
+	 */
+	private static void serve(SocketChannel channel) {
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), "UTF-8"));
+			OutputStream out = Channels.newOutputStream(channel);
+
+			while (true) {
+				String requestLine = reader.readLine();
+
+				if (requestLine == null)
+					return;
+
+				String line;
+				while ((line = reader.readLine()) != null && line.length() > 0) {
+					// 忽略请求头
+				}
+
+				byte[] body = ("path=" + requestLine.split(" ")[1]).getBytes("UTF-8");
+				out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length + "\r\n\r\n")
+						.getBytes("UTF-8"));
+				out.write(body);
+				out.flush();
+			}
+		} catch (IOException ignore) {
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+}